@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure the operations on patterns other than matching a single pattern: comparing and sorting
+ * them, finding the best of them for a path, combining them and extracting the part of a path a
+ * pattern matches.
+ *
+ * @author Andy Clement
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ComparisonBenchmark {
+
+	private static final String[] SHAPES = { "/api/v1/%s", "/api/v1/%s/{id}", "/api/v1/%s/{id:[0-9]+}",
+			"/api/v1/%s/*", "/api/v1/%s/{id}/items/{item}", "/api/v1/%s/{*rest}", "/api/v1/%s/*.json" };
+
+	@Param({ "10", "1000" })
+	public int patternCount;
+
+	private List<PathPattern> pathPatterns;
+
+	// Matched by several shapes of the first resource
+	private String path;
+
+	private PathPattern pattern1;
+
+	private PathPattern pattern2;
+
+	private PathPattern extractPattern;
+
+	private final PathPatternComparator comparator = new PathPatternComparator();
+
+	@Setup
+	public void setup() {
+		PathPatternParser parser = new PathPatternParser();
+		pathPatterns = new ArrayList<>();
+		for (int i = 0; i < patternCount; i++) {
+			pathPatterns.add(parser.parse(String.format(SHAPES[i % SHAPES.length], "resource" + (i / SHAPES.length))));
+		}
+		Collections.shuffle(pathPatterns, new Random(42));
+		path = "/api/v1/resource0/42";
+		pattern1 = parser.parse("/api/v1/customer/{id}");
+		pattern2 = parser.parse("/api/v1/customer/*");
+		extractPattern = parser.parse("/docs/cvs/*.html");
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return pattern1.compareTo(pattern2);
+	}
+
+	@Benchmark
+	public int comparator() {
+		return comparator.compare(pattern1, pattern2);
+	}
+
+	@Benchmark
+	public List<PathPattern> sort() {
+		List<PathPattern> sorted = new ArrayList<>(pathPatterns);
+		Collections.sort(sorted, comparator);
+		return sorted;
+	}
+
+	@Benchmark
+	public List<PathPattern> sortByKey() {
+		List<PathPattern> sorted = new ArrayList<>(pathPatterns);
+		PathPatterns.sort(sorted);
+		return sorted;
+	}
+
+	@Benchmark
+	public List<PathPattern> sortConsideringPath() {
+		List<PathPattern> sorted = new ArrayList<>(pathPatterns);
+		PathPatterns.sort(sorted, path);
+		return sorted;
+	}
+
+	@Benchmark
+	public PathMatchResult findBestMatch() {
+		return PathPatterns.findBestMatch(pathPatterns, path);
+	}
+
+	@Benchmark
+	public String combine() {
+		return pattern1.combine("/orders/{order}");
+	}
+
+	@Benchmark
+	public String extractPathWithinPattern() {
+		return extractPattern.extractPathWithinPattern("/docs/cvs/commit.html");
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.patterns.PathPattern.MatchingContext;
+
+/**
+ * Measure matching a path against a pattern where the interesting part of the pattern is a
+ * particular kind of path element, in both case modes. The path matches the pattern, the prefix
+ * passed to matchStart is the path up to the segment handled by that kind of element.
+ *
+ * @author Andy Clement
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatchingBenchmark {
+
+	@Param({ "literal", "separator", "wildcard", "singleCharWildcard", "glob", "capture", "constrainedCapture",
+			"regex", "captureTheRest" })
+	public String kind;
+
+	@Param({ "true", "false" })
+	public boolean caseSensitive;
+
+	private PathPattern pathPattern;
+
+	private String path;
+
+	private String prefix;
+
+	private MatchingContext matchingContext;
+
+	@Setup
+	public void setup() {
+		String pattern;
+		switch (kind) {
+			case "literal":
+				pattern = "/customer/orders/items";
+				path = "/customer/orders/items";
+				break;
+			case "separator":
+				pattern = "/////";
+				path = "/////";
+				break;
+			case "wildcard":
+				pattern = "/customer/*/items";
+				path = "/customer/orders/items";
+				break;
+			case "singleCharWildcard":
+				pattern = "/customer/ord??s/items";
+				path = "/customer/orders/items";
+				break;
+			case "glob":
+				pattern = "/customer/*.html";
+				path = "/customer/index.html";
+				break;
+			case "capture":
+				pattern = "/customer/{id}/items";
+				path = "/customer/12345/items";
+				break;
+			case "constrainedCapture":
+				pattern = "/customer/{id:[0-9]+}/items";
+				path = "/customer/12345/items";
+				break;
+			case "regex":
+				pattern = "/customer/{id}_{version}/items";
+				path = "/customer/12345_2/items";
+				break;
+			case "captureTheRest":
+				pattern = "/customer/{*rest}";
+				path = "/customer/12345/items";
+				break;
+			default:
+				throw new IllegalStateException(kind);
+		}
+		PathPatternParser parser = new PathPatternParser();
+		parser.setCaseSensitive(caseSensitive);
+		pathPattern = parser.parse(pattern);
+		prefix = path.substring(0, path.indexOf('/', 1) + 1);
+		matchingContext = new MatchingContext();
+		if (!pathPattern.matches(path)) {
+			throw new IllegalStateException(pattern + " should match " + path);
+		}
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return pathPattern.matches(path);
+	}
+
+	@Benchmark
+	public boolean matchesReusingContext() {
+		return pathPattern.matches(path, matchingContext);
+	}
+
+	@Benchmark
+	public boolean matchStart() {
+		return pathPattern.matchStart(prefix);
+	}
+
+	@Benchmark
+	public Map<String, String> matchAndExtract() {
+		return pathPattern.matchAndExtract(path);
+	}
+
+	@Benchmark
+	public PathMatchResult matchAndCapture() {
+		return pathPattern.matchAndCapture(path, matchingContext);
+	}
+
+}
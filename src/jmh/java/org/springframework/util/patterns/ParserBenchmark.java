@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure parsing patterns made up of the different kinds of path element, with and without
+ * the caching and interning that large sets of patterns can use.
+ *
+ * @author Andy Clement
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+	@Param({ "/customer/orders/items", "/customer/*/items", "/customer/ord??s/items", "/customer/{id}/items",
+			"/customer/{id:[0-9]+}/items", "/customer/{id}_{version}/items", "/customer/*.html", "/customer/{*rest}" })
+	public String pattern;
+
+	@Param({ "true", "false" })
+	public boolean caseSensitive;
+
+	private PathPatternParser parser;
+
+	private PathPatternParser interningParser;
+
+	private PathPatternCache cache;
+
+	@Setup
+	public void setup() {
+		parser = new PathPatternParser();
+		parser.setCaseSensitive(caseSensitive);
+		interningParser = new PathPatternParser();
+		interningParser.setCaseSensitive(caseSensitive);
+		interningParser.setInternPatterns(true);
+		cache = new PathPatternCache(16);
+	}
+
+	@Benchmark
+	public PathPattern parse() {
+		return parser.parse(pattern);
+	}
+
+	@Benchmark
+	public PathPattern parseInterning() {
+		return interningParser.parse(pattern);
+	}
+
+	@Benchmark
+	public PathPattern parseCached() {
+		return cache.parse(pattern, PathPatternParser.DEFAULT_SEPARATOR, caseSensitive);
+	}
+
+}
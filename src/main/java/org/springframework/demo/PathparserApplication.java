@@ -23,7 +23,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.util.patterns.PathPattern;
-import org.springframework.util.patterns.PathPatternParser;
+import org.springframework.util.patterns.PathPatternCache;
 import org.springframework.util.patterns.PatternParseException;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -46,6 +46,9 @@ public class PathparserApplication {
 
 @RestController
 class Listener {
+
+	// Browsing tends to revisit the same few patterns, no need to parse them every time
+	private static final PathPatternCache patterns = new PathPatternCache(256);
 	
 	@RequestMapping("/**")
 	public String foo(@RequestParam(value="path",required=false) String path, HttpServletRequest req) {
@@ -60,7 +63,7 @@ class Listener {
 		buf.append("<br>");
 		PathPattern p = null;
 		try {
-			p = new PathPatternParser().parse(url);
+			p = patterns.parse(url);
 			buf.append("Sections:<br>");
 			buf.append(p.toChainString().replaceAll(" ","&nbsp;"));
 		} catch (PatternParseException ppe) {
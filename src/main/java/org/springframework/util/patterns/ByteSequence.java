@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allows a path held as UTF-8 encoded bytes, either in a byte array or a (possibly direct)
+ * {@link ByteBuffer}, to be matched by a {@link PathPattern} without first decoding it into a
+ * String. In the common case of the path being pure US-ASCII each byte is a character, so
+ * the path elements compare their literal text and scan for the separator directly against the
+ * bytes and Strings are only created for captured variables. If the bytes include any non ASCII
+ * characters they are decoded and the resulting String is matched instead.
+ * <pre class="code">
+ * boolean matched = pattern.matches(ByteSequence.forUtf8(requestTargetBuffer));
+ * </pre>
+ *
+ * @author Andy Clement
+ */
+public final class ByteSequence implements CharSequence {
+
+	// Set if the bytes are in an array
+	private final byte[] array;
+
+	// Little endian view of the bytes, for reading 8 at a time. Also used for single
+	// bytes if they are not in an array (e.g. a direct buffer)
+	private final ByteBuffer buffer;
+
+	// Absolute index of the first byte in the array or buffer
+	private final int start;
+
+	private final int length;
+
+	private ByteSequence(byte[] array, ByteBuffer buffer, int start, int length) {
+		this.array = array;
+		this.buffer = buffer;
+		this.start = start;
+		this.length = length;
+	}
+
+	/**
+	 * @param bytes UTF-8 encoded path data
+	 * @param offset the position of the path in the array
+	 * @param length the length of the path in bytes
+	 * @return a sequence of characters that reads the bytes in place if they are all ASCII, otherwise the decoded path
+	 */
+	public static CharSequence forUtf8(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " for " + bytes.length + " bytes");
+		}
+		for (int i = offset, max = offset + length; i < max; i++) {
+			if (bytes[i] < 0) {
+				return new String(bytes, offset, length, StandardCharsets.UTF_8);
+			}
+		}
+		return new ByteSequence(bytes, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), offset, length);
+	}
+
+	/**
+	 * @param buffer UTF-8 encoded path data between the position and limit of the buffer, the
+	 * position of the buffer is not changed
+	 * @return a sequence of characters that reads the bytes in place if they are all ASCII, otherwise the decoded path
+	 */
+	public static CharSequence forUtf8(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			return forUtf8(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		int position = buffer.position();
+		int limit = buffer.limit();
+		for (int i = position; i < limit; i++) {
+			if (buffer.get(i) < 0) {
+				return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+			}
+		}
+		return new ByteSequence(null, buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN), position, limit - position);
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index=" + index + " length=" + length);
+		}
+		if (array != null) {
+			return (char) array[start + index];
+		}
+		return (char) buffer.get(start + index);
+	}
+
+	/**
+	 * Find a character using SWAR: each step loads 8 bytes into a long and, after an xor with
+	 * the character repeated in every byte, checks all of them for a zero byte at once.
+	 * @param ch the character to look for
+	 * @param from the position to start looking from
+	 * @return the position of the first occurrence of the character at or after from, or the length if there isn't one
+	 */
+	int indexOf(char ch, int from) {
+		if (ch >= 128) {
+			return length; // bytes are all ASCII
+		}
+		int end = start + length;
+		int i = start + from;
+		long pattern = 0x0101010101010101L * ch;
+		for (; i + 8 <= end; i += 8) {
+			long word = buffer.getLong(i) ^ pattern;
+			// High bit set in each byte that was zero, the lowest set bit is always a genuine zero
+			long zeroBytes = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+			if (zeroBytes != 0) {
+				return i - start + (Long.numberOfTrailingZeros(zeroBytes) >>> 3);
+			}
+		}
+		for (; i < end; i++) {
+			if ((array != null ? array[i] : buffer.get(i)) == ch) {
+				return i - start;
+			}
+		}
+		return length;
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start=" + start + " end=" + end + " length=" + length);
+		}
+		return new ByteSequence(array, buffer, this.start + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		if (array != null) {
+			return new String(array, start, length, StandardCharsets.US_ASCII);
+		}
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) buffer.get(start + i);
+		}
+		return new String(chars);
+	}
+
+}
@@ -27,15 +27,31 @@ class CaptureTheRestPathElement extends PathElement {
 
 	private String variableName;
 
+	// Index of the captured variable within the pattern
+	private final int captureSlot;
+
 	/**
 	 * @param pos
 	 * @param captureDescriptor a character array containing contents like '{' '*' 'a' 'b' '}'
+	 * @param captureSlot the index of the variable amongst those captured by the pattern
 	 */
-	CaptureTheRestPathElement(int pos, char[] captureDescriptor) {
+	CaptureTheRestPathElement(int pos, char[] captureDescriptor, int captureSlot) {
 		super(pos);
+		this.captureSlot = captureSlot;
 		variableName = new String(captureDescriptor, 2, captureDescriptor.length - 3);
 	}
 
+	private CaptureTheRestPathElement(int pos, String variableName, int captureSlot) {
+		super(pos);
+		this.variableName = variableName;
+		this.captureSlot = captureSlot;
+	}
+
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new CaptureTheRestPathElement(pos, variableName, captureSlot);
+	}
+
 	@Override
 	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
 		// No need to handle 'match start' checking as this captures everything
@@ -43,12 +59,15 @@ class CaptureTheRestPathElement extends PathElement {
 		// assert next == null
 		// TODO regex constraint on this?
 		if (matchingContext.extractingVariables) {
-			matchingContext.set(variableName, new String(matchingContext.candidate, candidateIndex,
-					matchingContext.candidateLength - candidateIndex));
+			matchingContext.capture(captureSlot, candidateIndex, matchingContext.candidateLength);
 		}
 		return true;
 	}
 
+	public String getVariableName() {
+		return variableName;
+	}
+
 	@Override
 	public String getText() {
 		StringBuilder buf = new StringBuilder();
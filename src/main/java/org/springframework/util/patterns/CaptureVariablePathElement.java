@@ -28,18 +28,38 @@ import org.springframework.util.patterns.PathPattern.MatchingContext;
 class CaptureVariablePathElement extends PathElement {
 
 	private String variableName;
+
+	// The text of the constraint regex, null if there is no constraint
+	private String constraintRegex;
 	
-	private java.util.regex.Pattern constraintPattern;
+	// Compiled when first needed if the element was loaded from a snapshot, see constraintPattern()
+	private volatile java.util.regex.Pattern constraintPattern;
+
+	// If the constraint is a simple character class, a faster way to check it than the regex
+	private CharacterClassConstraint constraintClass;
 	
 	private boolean caseSensitive;
 
+	// Index of the captured variable within the pattern
+	private final int captureSlot;
+
+	// Is the constraint checked after the rest of the pattern has matched
+	private final boolean constraintDeferred;
+
 	/**
 	 * @param pos the position in the pattern of this capture element
 	 * @param captureDescriptor is of the form {AAAAA[:pattern]}
+	 * @param caseSensitive true if any constraint should be applied in a case sensitive way
+	 * @param captureSlot the index of the variable amongst those captured by the pattern
+	 * @param constraintDeferred true if any constraint should only be checked once the rest of the pattern matches
+	 * @param interner shares the compiled constraint with other patterns using the same one
 	 */
-	CaptureVariablePathElement(int pos, char[] captureDescriptor, boolean caseSensitive) {
+	CaptureVariablePathElement(int pos, char[] captureDescriptor, boolean caseSensitive, int captureSlot,
+			boolean constraintDeferred, PathPatternInterner interner) {
 		super(pos);
 		this.caseSensitive = caseSensitive;
+		this.captureSlot = captureSlot;
+		this.constraintDeferred = constraintDeferred;
 		int colon = -1;
 		for (int i = 0; i < captureDescriptor.length; i++) {
 			if (captureDescriptor[i] == ':') {
@@ -52,28 +72,57 @@ class CaptureVariablePathElement extends PathElement {
 			variableName = new String(captureDescriptor, 1, captureDescriptor.length - 2);
 		} else {
 			variableName = new String(captureDescriptor, 1, colon - 1);
-			if (caseSensitive) {
-				constraintPattern = java.util.regex.Pattern
-						.compile(new String(captureDescriptor, colon + 1, captureDescriptor.length - colon - 2));
-			} else {
-				constraintPattern = java.util.regex.Pattern.compile(
-						new String(captureDescriptor, colon + 1, captureDescriptor.length - colon - 2),
-						java.util.regex.Pattern.CASE_INSENSITIVE);
-			}
+			constraintRegex = new String(captureDescriptor, colon + 1, captureDescriptor.length - colon - 2);
+			constraintPattern = interner.compile(constraintRegex, caseSensitive);
+			constraintClass = CharacterClassConstraint.parse(constraintRegex, caseSensitive);
 		}
 	}
 
+	/**
+	 * Create the element from the parts of its descriptor, as saved in a {@link PathPatternSnapshot}.
+	 * The descriptor was valid when it was saved so a constraint regex is not compiled until it is
+	 * first needed, which is never if it is a simple character class.
+	 * @param pos the position in the pattern of this capture element
+	 * @param variableName the name of the captured variable
+	 * @param constraintRegex the constraint regex or null if there is no constraint
+	 * @param caseSensitive true if any constraint should be applied in a case sensitive way
+	 * @param captureSlot the index of the variable amongst those captured by the pattern
+	 * @param constraintDeferred true if any constraint should only be checked once the rest of the pattern matches
+	 */
+	CaptureVariablePathElement(int pos, String variableName, String constraintRegex, boolean caseSensitive,
+			int captureSlot, boolean constraintDeferred) {
+		super(pos);
+		this.variableName = variableName;
+		this.constraintRegex = constraintRegex;
+		this.caseSensitive = caseSensitive;
+		this.captureSlot = captureSlot;
+		this.constraintDeferred = constraintDeferred;
+		if (constraintRegex != null) {
+			constraintClass = CharacterClassConstraint.parse(constraintRegex, caseSensitive);
+		}
+	}
+
+	private CaptureVariablePathElement(int pos, CaptureVariablePathElement original, int captureSlot) {
+		super(pos);
+		this.variableName = original.variableName;
+		this.constraintRegex = original.constraintRegex;
+		this.constraintPattern = original.constraintPattern;
+		this.constraintClass = original.constraintClass;
+		this.caseSensitive = original.caseSensitive;
+		this.captureSlot = captureSlot;
+		this.constraintDeferred = original.constraintDeferred;
+	}
+
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new CaptureVariablePathElement(pos, this, captureSlot);
+	}
+
 	@Override
 	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
 		int nextPos = matchingContext.scanAhead(candidateIndex);
-		CharSequence candidateCapture = null;
-		if (constraintPattern != null) {
-			// TODO could push the regex match such that we only try it if the rest of the pattern matches - what is faster?
-			candidateCapture = new SubSequence(matchingContext.candidate, candidateIndex, nextPos);
-			Matcher m = constraintPattern.matcher(candidateCapture);
-			if (!m.matches()) {
-				return false;
-			}
+		if (!constraintDeferred && !satisfiesConstraint(candidateIndex, nextPos, matchingContext)) {
+			return false;
 		}
 		boolean match = false;
 		if (next == null) {
@@ -85,30 +134,85 @@ class CaptureVariablePathElement extends PathElement {
 				match = next.matches(nextPos, matchingContext);
 			}
 		}
+		if (match && constraintDeferred) {
+			// The rest of the pattern matched, the constraint is all that remains
+			match = satisfiesConstraint(candidateIndex, nextPos, matchingContext);
+		}
 		if (match && matchingContext.extractingVariables) {
-			matchingContext.set(variableName, new String(matchingContext.candidate, candidateIndex, nextPos - candidateIndex));
+			matchingContext.capture(captureSlot, candidateIndex, nextPos);
 		}
 		return match;
 	}
+
+	private boolean satisfiesConstraint(int start, int end, MatchingContext matchingContext) {
+		if (constraintClass != null) {
+			return constraintClass.matches(matchingContext.candidate, start, end);
+		} else if (constraintRegex != null) {
+			Matcher m = matchingContext.matcher(constraintPattern(), matchingContext.window(start, end));
+			return m.matches();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the compiled constraint, compiling it now if the element was loaded from a snapshot.
+	 * Threads that race to compile it each compile the same regex, any of the results can be kept.
+	 */
+	private java.util.regex.Pattern constraintPattern() {
+		java.util.regex.Pattern pattern = constraintPattern;
+		if (pattern == null) {
+			pattern = PathPatternInterner.NONE.compile(constraintRegex, caseSensitive);
+			constraintPattern = pattern;
+		}
+		return pattern;
+	}
 	
 	public String getVariableName() {
 		return this.variableName;
 	}
+
+	/**
+	 * @return true if the captured text must satisfy a regex constraint, e.g. {foo:[0-9]+}
+	 */
+	public boolean isConstrained() {
+		return constraintRegex != null;
+	}
+
+	/**
+	 * @return true if the constraint is only checked after the rest of the pattern has matched
+	 */
+	boolean isConstraintDeferred() {
+		return constraintDeferred;
+	}
+
+	/**
+	 * @return the object to check the constraint with, either a {@link CharacterClassConstraint} or the regex
+	 */
+	Object getConstraint() {
+		return (constraintClass != null ? constraintClass : constraintPattern());
+	}
+
+	/**
+	 * @return the text of the constraint regex or null if there is no constraint
+	 */
+	String getConstraintRegex() {
+		return constraintRegex;
+	}
 	
 	@Override
 	public String getText() {
 		StringBuilder buf = new StringBuilder();
 		buf.append('{');
 		buf.append(variableName);
-		if (constraintPattern != null) {
-			buf.append(':').append(constraintPattern.pattern());
+		if (constraintRegex != null) {
+			buf.append(':').append(constraintRegex);
 		}
 		buf.append('}');
 		return buf.toString();
 	}
 
 	public String toString() {
-		return "CaptureVariable({" + variableName + (constraintPattern == null ? "" : ":" + constraintPattern.pattern()) + "})";
+		return "CaptureVariable({" + variableName + (constraintRegex == null ? "" : ":" + constraintRegex) + "})";
 	}
 
 	public boolean isCaseSensitive() {
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+/**
+ * A capture constraint that is a single, repeated, character class. For example {@code \d+},
+ * {@code [0-9]+}, {@code [a-zA-Z0-9_-]+} or {@code [a-f0-9]{8}}. Most constraints take one of these
+ * forms and checking them is just a loop over the captured characters with a table lookup for
+ * each, rather than running a regex {@link java.util.regex.Matcher}. {@link #parse(String, boolean)}
+ * recognizes the supported forms, anything more complex keeps using the regex.
+ *
+ * @author Andy Clement
+ */
+final class CharacterClassConstraint {
+
+	// Bit n is set if ascii char n is in the class (chars 0-63 in low, 64-127 in high)
+	private long low;
+	private long high;
+
+	// Whether non ascii characters are in the class, only via a negated class like [^/]. Regardless
+	// of case sensitivity, a constraint regex only ever folds the case of ASCII characters
+	private boolean nonAscii;
+
+	// Permitted number of characters
+	private int minCount = 1;
+	private int maxCount = 1;
+
+	private CharacterClassConstraint() {
+	}
+
+	/**
+	 * @param candidate the text containing the captured characters
+	 * @param start the position of the first captured character
+	 * @param end the position after the last captured character
+	 * @return true if the captured characters satisfy the constraint
+	 */
+	boolean matches(CharSequence candidate, int start, int end) {
+		int count = end - start;
+		if (count < minCount || count > maxCount) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (!includes(candidate.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean includes(char ch) {
+		if (ch < 64) {
+			return (low & (1L << ch)) != 0;
+		} else if (ch < 128) {
+			return (high & (1L << (ch - 64))) != 0;
+		}
+		return nonAscii;
+	}
+
+	/**
+	 * Recognize a constraint of the form <i>class</i><i>quantifier</i> where the class is one of
+	 * {@code \d}, {@code \w}, {@code \s} or a bracketed class of ascii characters, ranges and those
+	 * escapes, optionally negated. The quantifier is absent or one of {@code + * ? {n} {n,} {n,m}}.
+	 *
+	 * @param regex the text of the constraint
+	 * @param caseSensitive false if the constraint is used in the same way as a regex compiled with
+	 * CASE_INSENSITIVE, where ASCII letters match either case
+	 * @return the constraint or null if the regex is not of a supported form
+	 */
+	static CharacterClassConstraint parse(String regex, boolean caseSensitive) {
+		CharacterClassConstraint constraint = new CharacterClassConstraint();
+		int pos;
+		if (regex.startsWith("[")) {
+			pos = constraint.parseBracketedClass(regex, caseSensitive);
+		} else if (regex.length() >= 2 && regex.charAt(0) == '\\' && constraint.addEscapedClass(regex.charAt(1))) {
+			pos = 2;
+		} else {
+			return null;
+		}
+		if (pos == -1 || !constraint.parseQuantifier(regex, pos)) {
+			return null;
+		}
+		return constraint;
+	}
+
+	/**
+	 * @return the position after the closing ']' or -1 if the class is not supported
+	 */
+	private int parseBracketedClass(String regex, boolean caseSensitive) {
+		int pos = 1;
+		boolean negated = false;
+		if (pos < regex.length() && regex.charAt(pos) == '^') {
+			negated = true;
+			pos++;
+		}
+		boolean first = true;
+		while (pos < regex.length()) {
+			char ch = regex.charAt(pos);
+			if (ch == ']') {
+				if (first) {
+					// Leave unusual forms like []a] to the regex
+					return -1;
+				}
+				if (!caseSensitive) {
+					// Before any negation, so [^a] excludes both cases
+					foldAsciiCase();
+				}
+				if (negated) {
+					low = ~low;
+					high = ~high;
+					nonAscii = true;
+				}
+				return pos + 1;
+			}
+			first = false;
+			if (ch == '[' || ch == '&' || ch >= 128) {
+				return -1;
+			}
+			if (ch == '\\') {
+				if (pos + 1 == regex.length()) {
+					return -1;
+				}
+				char escaped = regex.charAt(pos + 1);
+				pos += 2;
+				if (!addEscapedClass(escaped)) {
+					if (Character.isLetterOrDigit(escaped) || escaped >= 128) {
+						return -1;
+					}
+					add(escaped);
+				}
+				continue;
+			}
+			if (pos + 2 < regex.length() && regex.charAt(pos + 1) == '-' && regex.charAt(pos + 2) != ']') {
+				char rangeEnd = regex.charAt(pos + 2);
+				if (rangeEnd == '\\' || rangeEnd == '[' || rangeEnd >= 128 || rangeEnd < ch) {
+					return -1;
+				}
+				for (char c = ch; c <= rangeEnd; c++) {
+					add(c);
+				}
+				pos += 3;
+			} else {
+				add(ch);
+				pos++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return false if the quantifier is not supported or there is trailing text after it
+	 */
+	private boolean parseQuantifier(String regex, int pos) {
+		if (pos == regex.length()) {
+			return true;
+		}
+		char ch = regex.charAt(pos);
+		if (ch == '+' || ch == '*' || ch == '?') {
+			minCount = (ch == '+' ? 1 : 0);
+			maxCount = (ch == '?' ? 1 : Integer.MAX_VALUE);
+			return pos + 1 == regex.length();
+		}
+		if (ch != '{' || regex.charAt(regex.length() - 1) != '}') {
+			return false;
+		}
+		String bounds = regex.substring(pos + 1, regex.length() - 1);
+		try {
+			int comma = bounds.indexOf(',');
+			if (comma == -1) {
+				minCount = maxCount = Integer.parseInt(bounds);
+			} else {
+				minCount = Integer.parseInt(bounds.substring(0, comma));
+				maxCount = (comma == bounds.length() - 1 ? Integer.MAX_VALUE : Integer.parseInt(bounds.substring(comma + 1)));
+			}
+		} catch (NumberFormatException nfe) {
+			return false;
+		}
+		return minCount >= 0 && minCount <= maxCount;
+	}
+
+	/**
+	 * Add the characters of a predefined class, these are ascii only as the constraint
+	 * regex is not compiled with UNICODE_CHARACTER_CLASS.
+	 * @return false if the escape is not a supported predefined class
+	 */
+	private boolean addEscapedClass(char ch) {
+		switch (ch) {
+			case 'd':
+				addRange('0', '9');
+				return true;
+			case 'w':
+				addRange('a', 'z');
+				addRange('A', 'Z');
+				addRange('0', '9');
+				add('_');
+				return true;
+			case 's':
+				add(' ');
+				add('\t');
+				add('\n');
+				add('\u000B');
+				add('\f');
+				add('\r');
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Make each ASCII letter in the class match in either case.
+	 */
+	private void foldAsciiCase() {
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			char upper = (char) (ch - ('a' - 'A'));
+			if (includes(ch) || includes(upper)) {
+				add(ch);
+				add(upper);
+			}
+		}
+	}
+
+	private void addRange(char from, char to) {
+		for (char c = from; c <= to; c++) {
+			add(c);
+		}
+	}
+
+	private void add(char ch) {
+		if (ch < 64) {
+			low |= (1L << ch);
+		} else {
+			high |= (1L << (ch - 64));
+		}
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+/**
+ * Base class for the matchers generated by the {@link PathPatternCompiler}. A generated matcher
+ * checks a candidate path against a single pattern in one method, without walking the chain of
+ * path elements. This type is only public so that generated subclasses (defined in their own
+ * class loader) can extend it.
+ *
+ * @author Andy Clement
+ */
+public abstract class CompiledPathMatcher {
+
+	/**
+	 * The constraints of the pattern in the order they appear in the pattern, each either a regex or
+	 * a {@link CharacterClassConstraint}
+	 */
+	private final Object[] constraints;
+
+	protected CompiledPathMatcher(Object[] constraints) {
+		this.constraints = constraints;
+	}
+
+	/**
+	 * Attempt to match the candidate path.
+	 *
+	 * @param path the candidate path
+	 * @param matchStart true if the pattern only needs to match as much of the path as is supplied
+	 * @param captures if not null, on a successful match the start and end positions of the
+	 * variable in capture slot i of the pattern are stored at 2*i and 2*i+1
+	 * @return true if the path matches
+	 */
+	public abstract boolean matches(CharSequence path, boolean matchStart, int[] captures);
+
+	/**
+	 * Check a captured variable satisfies its constraint.
+	 *
+	 * @param index the index of the constraint
+	 * @param path the candidate path
+	 * @param start the start of the captured variable
+	 * @param end the end of the captured variable
+	 * @return true if the constraint is satisfied
+	 */
+	protected final boolean checkConstraint(int index, CharSequence path, int start, int end) {
+		Object constraint = constraints[index];
+		if (constraint instanceof CharacterClassConstraint) {
+			return ((CharacterClassConstraint) constraint).matches(path, start, end);
+		}
+		return ((java.util.regex.Pattern) constraint).matcher(path.subSequence(start, end)).matches();
+	}
+
+	/**
+	 * @return the position of the next separator at or after pos, or the length of the path if there isn't one
+	 */
+	protected static int scanAhead(CharSequence path, char separator, int pos) {
+		return SeparatorScanner.scan(path, separator, pos);
+	}
+
+	/**
+	 * Lower case a candidate character in the same way as the path elements do.
+	 */
+	protected static char toLowerCase(char ch) {
+		return PathElement.toLowerCase(ch);
+	}
+
+}
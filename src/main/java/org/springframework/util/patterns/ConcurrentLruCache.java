@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A size bounded cache that can be used from many threads, evicting the least recently used
+ * entry when it is full. Values are created by the supplied generator on a miss. Lookups never
+ * block on the cache: the entries are in a concurrent map and the recency order is a linked list
+ * in which a hit moves its entry to the most recently used end, provided no other thread is
+ * using the list at that moment (under contention the order is approximate rather than making
+ * hits wait). A miss generates the value without holding any lock, threads that want the same
+ * key while it is being generated wait for that one value.
+ *
+ * @author Andy Clement
+ */
+final class ConcurrentLruCache<K, V> {
+
+	private final int sizeLimit;
+
+	private final Function<K, V> generator;
+
+	private final ConcurrentHashMap<K, Entry<K, V>> cache = new ConcurrentHashMap<>();
+
+	// Guards the recency list
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// The least and most recently used entries that have a value
+	private Entry<K, V> leastRecentlyUsed;
+
+	private Entry<K, V> mostRecentlyUsed;
+
+	// The number of entries in the recency list
+	private volatile int size;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param sizeLimit the maximum number of entries in the cache
+	 * @param generator creates the value for a key that is not in the cache
+	 */
+	ConcurrentLruCache(int sizeLimit, Function<K, V> generator) {
+		if (sizeLimit <= 0) {
+			throw new IllegalArgumentException("Cache size limit must be positive: " + sizeLimit);
+		}
+		this.sizeLimit = sizeLimit;
+		this.generator = generator;
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the cached value for the key, generating it if it is not in the cache
+	 */
+	V get(K key) {
+		Entry<K, V> entry = cache.get(key);
+		if (entry == null) {
+			Entry<K, V> newEntry = new Entry<>(key);
+			entry = cache.putIfAbsent(key, newEntry);
+			if (entry == null) {
+				return generate(newEntry);
+			}
+		}
+		V value;
+		try {
+			// Waits if another thread is still generating the value
+			value = entry.get();
+		} catch (RuntimeException | Error ex) {
+			// That generation failed, nothing was found in the cache
+			missCount.increment();
+			throw ex;
+		}
+		hitCount.increment();
+		if (lock.tryLock()) {
+			try {
+				if (entry.linked) {
+					unlink(entry);
+					link(entry);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return value;
+	}
+
+	private V generate(Entry<K, V> entry) {
+		missCount.increment();
+		V value;
+		try {
+			value = generator.apply(entry.key);
+		} catch (RuntimeException | Error ex) {
+			cache.remove(entry.key, entry);
+			entry.value.completeExceptionally(ex);
+			throw ex;
+		}
+		entry.value.complete(value);
+		lock.lock();
+		try {
+			// Unless the cache was cleared meanwhile
+			if (cache.get(entry.key) == entry) {
+				link(entry);
+				while (size > sizeLimit) {
+					Entry<K, V> evicted = leastRecentlyUsed;
+					unlink(evicted);
+					cache.remove(evicted.key, evicted);
+					evictionCount.increment();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		return value;
+	}
+
+	/**
+	 * Add the entry to the most recently used end of the list, the lock must be held.
+	 */
+	private void link(Entry<K, V> entry) {
+		entry.previous = mostRecentlyUsed;
+		entry.next = null;
+		if (mostRecentlyUsed == null) {
+			leastRecentlyUsed = entry;
+		} else {
+			mostRecentlyUsed.next = entry;
+		}
+		mostRecentlyUsed = entry;
+		entry.linked = true;
+		size++;
+	}
+
+	/**
+	 * Remove the entry from the list, the lock must be held.
+	 */
+	private void unlink(Entry<K, V> entry) {
+		if (entry.previous == null) {
+			leastRecentlyUsed = entry.next;
+		} else {
+			entry.previous.next = entry.next;
+		}
+		if (entry.next == null) {
+			mostRecentlyUsed = entry.previous;
+		} else {
+			entry.next.previous = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+		entry.linked = false;
+		size--;
+	}
+
+	boolean contains(K key) {
+		return cache.containsKey(key);
+	}
+
+	int size() {
+		return size;
+	}
+
+	int sizeLimit() {
+		return sizeLimit;
+	}
+
+	long hitCount() {
+		return hitCount.sum();
+	}
+
+	long missCount() {
+		return missCount.sum();
+	}
+
+	long evictionCount() {
+		return evictionCount.sum();
+	}
+
+	void clear() {
+		lock.lock();
+		try {
+			cache.clear();
+			while (leastRecentlyUsed != null) {
+				unlink(leastRecentlyUsed);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A key and its value, which may still be being generated.
+	 */
+	private static final class Entry<K, V> {
+
+		final K key;
+
+		final CompletableFuture<V> value = new CompletableFuture<>();
+
+		// Position in the recency list, guarded by the lock
+		Entry<K, V> previous;
+
+		Entry<K, V> next;
+
+		boolean linked;
+
+		Entry(K key) {
+			this.key = key;
+		}
+
+		V get() {
+			try {
+				return value.join();
+			} catch (CompletionException ex) {
+				// The generator failed in another thread, fail in the same way here
+				Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw ex;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests that the {@link PathMatcherProcessor} generates a matcher class for a fixed set of
+ * patterns when the annotated type is compiled. The patterns can be listed in the annotation,
+ * read from a file of patterns (one per line) or both.
+ * <pre class="code">
+ * &#64;GeneratePathMatcher({ "/customer/{id}", "/order/{*rest}" })
+ * class Routing {
+ * }
+ * ... RoutingPathMatcher.matchRoute0(path) ...
+ * </pre>
+ *
+ * @author Andy Clement
+ * @see PathMatcherSourceGenerator
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GeneratePathMatcher {
+
+	/**
+	 * @return the patterns to match
+	 */
+	String[] value() default {};
+
+	/**
+	 * @return a file of patterns to match, relative to the package of the annotated type, found
+	 * amongst the compiled classes (where resources are copied) or the sources
+	 */
+	String patternFile() default "";
+
+	/**
+	 * @return the simple name of the class to generate in the package of the annotated type, by
+	 * default the name of the annotated type followed by PathMatcher
+	 */
+	String className() default "";
+
+	char separator() default PathPatternParser.DEFAULT_SEPARATOR;
+
+	boolean caseSensitive() default true;
+
+}
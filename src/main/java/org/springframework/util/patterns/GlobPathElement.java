@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.patterns.PathPattern.MatchingContext;
+
+/**
+ * A path element for a segment that mixes literal text with '*' and possibly '?' wildcards but
+ * captures nothing, for example {@code *.html}, {@code foo*bar} or {@code api-?-*}. The text is
+ * split around each '*' into pieces. The first piece must match at the start of the segment, the
+ * last piece at the end of the segment and any pieces in between are located left to right in
+ * what remains. Within a piece '?' matches any character. No regex is involved, but the matching
+ * is the same as the regex this element replaces (each '*' as {@code .*} and each '?' as {@code .},
+ * compiled with {@code CASE_INSENSITIVE} when not case sensitive): wildcards do not match line
+ * terminators and case is only ignored for ASCII letters.
+ *
+ * @author Andy Clement
+ */
+class GlobPathElement extends PathElement {
+
+	private char[] text;
+
+	// The text between the '*' wildcards, lower case if not case sensitive
+	private char[][] pieces;
+
+	private boolean caseSensitive;
+
+	private int wildcardCount;
+
+	GlobPathElement(int pos, char[] globText, boolean caseSensitive) {
+		super(pos);
+		this.text = globText;
+		this.caseSensitive = caseSensitive;
+		List<char[]> pieces = new ArrayList<>();
+		int pieceStart = 0;
+		for (int i = 0; i <= globText.length; i++) {
+			if (i == globText.length || globText[i] == '*') {
+				char[] piece = new char[i - pieceStart];
+				for (int j = 0; j < piece.length; j++) {
+					char ch = globText[pieceStart + j];
+					piece[j] = (caseSensitive ? ch : asciiToLowerCase(ch));
+				}
+				pieces.add(piece);
+				pieceStart = i + 1;
+				if (i < globText.length) {
+					wildcardCount++;
+				}
+			}
+		}
+		this.pieces = pieces.toArray(new char[pieces.size()][]);
+	}
+
+	private GlobPathElement(int pos, GlobPathElement original) {
+		super(pos);
+		this.text = original.text;
+		this.pieces = original.pieces;
+		this.caseSensitive = original.caseSensitive;
+		this.wildcardCount = original.wildcardCount;
+	}
+
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new GlobPathElement(pos, this);
+	}
+
+	@Override
+	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
+		int segmentEnd = matchingContext.scanAhead(candidateIndex);
+		CharSequence candidate = matchingContext.candidate;
+		char[] prefix = pieces[0];
+		char[] suffix = pieces[pieces.length - 1];
+		int pos = candidateIndex + prefix.length;
+		int suffixStart = segmentEnd - suffix.length;
+		if (suffixStart < pos || !matchesPiece(prefix, candidate, candidateIndex)
+				|| !matchesPiece(suffix, candidate, suffixStart)) {
+			return false;
+		}
+		for (int p = 1; p < pieces.length - 1; p++) {
+			char[] piece = pieces[p];
+			while (pos + piece.length <= suffixStart && !matchesPiece(piece, candidate, pos)) {
+				// This character is matched by the '*' before the piece
+				if (isLineTerminator(candidate.charAt(pos))) {
+					return false;
+				}
+				pos++;
+			}
+			if (pos + piece.length > suffixStart) {
+				return false;
+			}
+			pos += piece.length;
+		}
+		// The characters matched by the last '*'
+		for (; pos < suffixStart; pos++) {
+			if (isLineTerminator(candidate.charAt(pos))) {
+				return false;
+			}
+		}
+		if (next == null) {
+			return (segmentEnd == matchingContext.candidateLength);
+		} else {
+			if (matchingContext.isMatchStartMatching && segmentEnd == matchingContext.candidateLength) {
+				return true; // no more data but matches up to this point
+			}
+			return next.matches(segmentEnd, matchingContext);
+		}
+	}
+
+	/**
+	 * @return true if the piece matches the candidate at the specified position
+	 */
+	private boolean matchesPiece(char[] piece, CharSequence candidate, int candidateIndex) {
+		for (int i = 0; i < piece.length; i++) {
+			char ch = piece[i];
+			char candidateChar = candidate.charAt(candidateIndex + i);
+			if (ch == '?') {
+				if (isLineTerminator(candidateChar)) {
+					return false;
+				}
+			} else if (candidateChar != ch && (caseSensitive || asciiToLowerCase(candidateChar) != ch)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char asciiToLowerCase(char ch) {
+		return (ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch);
+	}
+
+	/**
+	 * @return true for the characters that {@code .} in a regex does not match
+	 */
+	static boolean isLineTerminator(char ch) {
+		return (ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029');
+	}
+
+	public String toString() {
+		return "Glob(" + new String(text) + ")";
+	}
+
+	@Override
+	public String getText() {
+		return new String(text);
+	}
+
+	@Override
+	public int getNormalizedLength() {
+		return text.length;
+	}
+
+	@Override
+	public int getWildcardCount() {
+		return wildcardCount;
+	}
+
+	@Override
+	public int getScore() {
+		return wildcardCount * WILDCARD_WEIGHT;
+	}
+
+}
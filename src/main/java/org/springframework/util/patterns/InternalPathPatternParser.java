@@ -0,0 +1,372 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parses a single path pattern for a {@link PathPatternParser}. All the state of a parse is held
+ * here rather than in the PathPatternParser, each parse uses a new instance, so a configured
+ * PathPatternParser can be shared by any number of threads.
+ *
+ * @author Andy Clement
+ */
+class InternalPathPatternParser {
+
+	// The expected path separator to split path elements during parsing
+	private final char separator;
+
+	// Is the parser producing case sensitive PathPattern matchers
+	private final boolean caseSensitive;
+
+	// Should the parser generate a matcher class for each PathPattern
+	private final boolean compileMatchers;
+
+	// Should capture constraints only be checked once the rest of the pattern has matched
+	private final boolean deferConstraintChecks;
+
+	// Shares text, compiled regexes and patterns with other parses
+	private final PathPatternInterner interner;
+
+	// The input data for parsing
+	private char[] pathPatternData;
+
+	// The length of the input data
+	private int pathPatternLength;
+
+	// Current parsing position
+	int pos;
+
+	// How many ? characters in a particular path element
+	private int singleCharWildcardCount;
+
+	// Is the path pattern using * characters in a particular path element
+	private boolean wildcard = false;
+
+	// Is the construct {*...} being used in a particular path element
+	private boolean isCaptureTheRestVariable = false;
+
+	// Has the parser entered a {...} variable capture block in a particular
+	// path element
+	private boolean insideVariableCapture = false;
+
+	// How many variable captures are occuring in a particular path element
+	private int variableCaptureCount = 0;
+
+	// Start of the most recent path element in a particular path element
+	int pathElementStart;
+
+	// Start of the most recent variable capture in a particular path element
+	int variableCaptureStart;
+
+	// Variables captures in this path pattern
+	List<String> capturedVariableNames;
+
+	// The head of the path element chain currently being built
+	PathElement headPE;
+
+	// The most recently constructed path element in the chain
+	PathElement currentPE;
+
+	/**
+	 * @param parser the parser whose configuration should be used
+	 */
+	InternalPathPatternParser(PathPatternParser parser) {
+		this.separator = parser.separator;
+		this.caseSensitive = parser.caseSensitive;
+		this.compileMatchers = parser.compileMatchers;
+		this.deferConstraintChecks = parser.deferConstraintChecks;
+		this.interner = parser.interner;
+	}
+
+	/**
+	 * @param pathPattern the input path pattern, e.g. /foo/{bar}
+	 * @return a PathPattern for quickly matching paths against the specified path pattern
+	 * @throws PatternParseException if there is a problem with the pattern
+	 */
+	PathPattern parse(String pathPattern) {
+		if (pathPattern == null) {
+			pathPattern = "";
+		}
+		String internKey = null;
+		if (interner != PathPatternInterner.NONE) {
+			internKey = internKey(pathPattern);
+			PathPattern existing = interner.getPathPattern(internKey);
+			if (existing != null) {
+				return existing;
+			}
+		}
+		pathPatternData = pathPattern.toCharArray();
+		pathPatternLength = pathPatternData.length;
+		headPE = null;
+		currentPE = null;
+		capturedVariableNames = null;
+		pathElementStart = -1;
+		pos = 0;
+		resetPathElementState();
+		while (pos < pathPatternLength) {
+			char ch = pathPatternData[pos];
+			if (ch == separator) {
+				if (pathElementStart != -1) {
+					pushPathElement(createPathElement());
+				}
+				if (peekDoubleWildcard()) {
+					// Warning message about /** no longer being treated as a multi section matcher
+				}
+				pushPathElement(new SeparatorPathElement(pos, separator));
+			} else {
+				if (pathElementStart == -1) {
+					pathElementStart = pos;
+				}
+				if (ch == '?') {
+					singleCharWildcardCount++;
+				} else if (ch == '{') {
+					if (insideVariableCapture) {
+						throw new PatternParseException(pos, pathPatternData, PatternMessage.ILLEGAL_NESTED_CAPTURE);
+					} else if (pos > 0 && pathPatternData[pos - 1] == '}') {
+						throw new PatternParseException(pos, pathPatternData,
+								PatternMessage.CANNOT_HAVE_ADJACENT_CAPTURES);
+					}
+					insideVariableCapture = true;
+					variableCaptureStart = pos;
+				} else if (ch == '}') {
+					if (!insideVariableCapture) {
+						throw new PatternParseException(pos, pathPatternData, PatternMessage.MISSING_OPEN_CAPTURE);
+					}
+					insideVariableCapture = false;
+					if (isCaptureTheRestVariable && (pos + 1) < pathPatternLength) {
+						throw new PatternParseException(pos + 1, pathPatternData,
+								PatternMessage.NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST);
+					}
+					variableCaptureCount++;
+				} else if (ch == ':') {
+					if (insideVariableCapture) {
+						skipCaptureRegex();
+						insideVariableCapture = false;
+						variableCaptureCount++;
+					}
+				} else if (ch == '*') {
+					if (insideVariableCapture) {
+						if (variableCaptureStart == pos - 1) {
+							isCaptureTheRestVariable = true;
+						}
+					}
+					wildcard = true;
+				}
+				// Check that the characters used for captured variable names are like java identifiers
+				if (insideVariableCapture) {
+					if ((variableCaptureStart + 1 + (isCaptureTheRestVariable ? 1 : 0)) == pos
+							&& !Character.isJavaIdentifierStart(ch)) {
+						throw new PatternParseException(pos, pathPatternData,
+								PatternMessage.ILLEGAL_CHARACTER_AT_START_OF_CAPTURE_DESCRIPTOR,
+								Character.toString(ch));
+
+					} else if ((pos > (variableCaptureStart + 1 + (isCaptureTheRestVariable ? 1 : 0))
+							&& !Character.isJavaIdentifierPart(ch))) {
+						throw new PatternParseException(pos, pathPatternData,
+								PatternMessage.ILLEGAL_CHARACTER_IN_CAPTURE_DESCRIPTOR, Character.toString(ch));
+					}
+				}
+			}
+			pos++;
+		}
+		if (pathElementStart != -1) {
+			pushPathElement(createPathElement());
+		}
+		PathPattern newPattern = new PathPattern(pathPattern, headPE, separator, caseSensitive, deferConstraintChecks);
+		if (compileMatchers) {
+			newPattern.compile();
+		}
+		return (internKey == null ? newPattern : interner.intern(internKey, newPattern));
+	}
+
+	/**
+	 * @return a key that distinguishes the pattern text parsed with this configuration from any other
+	 */
+	private String internKey(String pathPattern) {
+		StringBuilder key = new StringBuilder(pathPattern.length() + 4);
+		key.append(separator).append(caseSensitive ? 'S' : 's').append(compileMatchers ? 'C' : 'c')
+				.append(deferConstraintChecks ? 'D' : 'd').append(pathPattern);
+		return key.toString();
+	}
+
+	/**
+	 * Just hit a ':' and want to jump over the regex specification for this
+	 * variable. pos will be pointing at the ':', we want to skip until the }.
+	 * Need to handle nesting of } in the regex and escaped variants of 
+	 * brackets.
+	 */
+	private void skipCaptureRegex() {
+		pos++;
+		int regexStart = pos;
+		int squareBracketDepth = 0; // how deep in [...]
+		int curlyBracketDepth = 0; // how deep in further {...}
+		while (pos < pathPatternLength) {
+			char ch = pathPatternData[pos];
+			if (ch == '[' && pathPatternData[pos - 1] != '\\') {
+				squareBracketDepth++;
+			} else if (ch == ']' && pathPatternData[pos - 1] != '\\') {
+				squareBracketDepth--;
+			}
+			if (ch == '{' && pathPatternData[pos - 1] != '\\' && squareBracketDepth == 0) {
+				curlyBracketDepth++;
+			} else if (ch == '}' && pathPatternData[pos - 1] != '\\' && squareBracketDepth == 0) {
+				if (ch == '}' && squareBracketDepth == 0 && curlyBracketDepth == 0) {
+					if (regexStart == pos) {
+						throw new PatternParseException(regexStart, pathPatternData,
+								PatternMessage.MISSING_REGEX_CONSTRAINT);
+					}
+					return;
+				}
+				curlyBracketDepth--;
+			}
+			if (ch == separator && squareBracketDepth == 0) {
+				throw new PatternParseException(pos, pathPatternData, PatternMessage.MISSING_CLOSE_CAPTURE);
+			}
+			pos++;
+		}
+		throw new PatternParseException(pos - 1, pathPatternData, PatternMessage.MISSING_CLOSE_CAPTURE);
+	}
+
+	/**
+	 * After processing a separator, a quick peek whether it is followed by **
+	 * (and only ** before the end of the pattern or the next separator)
+	 */
+	private boolean peekDoubleWildcard() {
+		if ((pos + 2) >= pathPatternLength) {
+			return false;
+		}
+		if (pathPatternData[pos + 1] != '*' || pathPatternData[pos + 2] != '*') {
+			return false;
+		}
+		return (pos + 3 == pathPatternLength || pathPatternData[pos + 3] == separator);
+	}
+
+	/**
+	 * @param newPathElement the new path element to add to the chain being built
+	 */
+	private void pushPathElement(PathElement newPathElement) {
+		if (currentPE instanceof CaptureTheRestPathElement) {
+			throw new PatternParseException(newPathElement.pos, pathPatternData,
+					PatternMessage.NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST);
+		}
+		if (headPE == null) {
+			headPE = newPathElement;
+			currentPE = newPathElement;
+		} else {
+			currentPE.next = newPathElement;
+			currentPE = currentPE.next;
+		}
+		resetPathElementState();
+	}
+
+	/**
+	 * Used the knowledge built up whilst processing since the last path element to determine what kind of path
+	 * element to create.
+	 * @return the new path element
+	 */
+	private PathElement createPathElement() {
+		if (insideVariableCapture) {
+			throw new PatternParseException(pos, pathPatternData, PatternMessage.MISSING_CLOSE_CAPTURE);
+		}
+		char[] pathElementText = new char[pos - pathElementStart];
+		System.arraycopy(pathPatternData, pathElementStart, pathElementText, 0, pos - pathElementStart);
+		try {
+			return createPathElement(pathElementText);
+		} catch (PatternSyntaxException pse) {
+			// A capture constraint that is not a valid regex
+			throw new PatternParseException(pse, pathElementStart, pathPatternData,
+					PatternMessage.REGEX_PATTERN_SYNTAX_EXCEPTION, pse.getDescription());
+		}
+	}
+
+	private PathElement createPathElement(char[] pathElementText) {
+		PathElement newPE = null;
+		if (variableCaptureCount > 0) {
+			if (variableCaptureCount == 1 && pathElementStart == variableCaptureStart && pathPatternData[pos - 1] == '}') {
+				if (isCaptureTheRestVariable) {
+					// It is {*....} 
+					newPE = new CaptureTheRestPathElement(pathElementStart, pathElementText, getCapturedVariableCount());
+					recordCapturedVariable(pathElementStart, ((CaptureTheRestPathElement) newPE).getVariableName());
+				} else {
+					// It is a full capture of this element (possibly with constraint), for example: /foo/{abc}/
+					newPE = new CaptureVariablePathElement(pathElementStart, pathElementText, caseSensitive,
+							getCapturedVariableCount(), deferConstraintChecks, interner);
+					recordCapturedVariable(pathElementStart, ((CaptureVariablePathElement) newPE).getVariableName());
+				}
+			} else {
+				if (isCaptureTheRestVariable) {
+					throw new PatternParseException(pathElementStart, pathPatternData,
+							PatternMessage.BADLY_FORMED_CAPTURE_THE_REST);
+				}
+				RegexPathElement newRegexSection = new RegexPathElement(pathElementStart, pathElementText, caseSensitive,
+						getCapturedVariableCount(), interner);
+				for (String variableName : newRegexSection.getVariableNames()) {
+					recordCapturedVariable(pathElementStart, variableName);
+				}
+				newPE = newRegexSection;
+			}
+		} else {
+			if (wildcard) {
+				if (pos - 1 == pathElementStart) {
+					newPE = new WildcardPathElement(pathElementStart);
+				} else {
+					newPE = new GlobPathElement(pathElementStart, pathElementText, caseSensitive);
+				}
+			} else if (singleCharWildcardCount!=0) {
+				newPE = new SingleCharWildcardedPathElement(pathElementStart, pathElementText, singleCharWildcardCount, caseSensitive);
+			} else {
+				newPE = new LiteralPathElement(pathElementStart, pathElementText, caseSensitive, interner);
+			}
+		}
+		return newPE;
+	}
+
+	/**
+	 * Reset all the flags and position markers computed during path element processing.
+	 */
+	private void resetPathElementState() {
+		pathElementStart = -1;
+		singleCharWildcardCount = 0;
+		insideVariableCapture = false;
+		variableCaptureCount = 0;
+		wildcard = false;
+		isCaptureTheRestVariable = false;
+		variableCaptureStart = -1;
+	}
+
+	/**
+	 * @return the number of variables captured so far, which is the capture slot the next captured variable will use
+	 */
+	private int getCapturedVariableCount() {
+		return (capturedVariableNames == null ? 0 : capturedVariableNames.size());
+	}
+
+	/**
+	 * Record a new captured variable. If it clashes with an existing one then report an error.
+	 */
+	private void recordCapturedVariable(int pos, String variableName) {
+		if (capturedVariableNames == null) {
+			capturedVariableNames = new ArrayList<>();
+		}
+		if (capturedVariableNames.contains(variableName)) {
+			throw new PatternParseException(pos, this.pathPatternData, PatternMessage.ILLEGAL_DOUBLE_CAPTURE, variableName);
+		}
+		capturedVariableNames.add(variableName);
+	}
+}
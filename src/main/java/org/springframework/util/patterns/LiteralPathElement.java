@@ -31,21 +31,34 @@ class LiteralPathElement extends PathElement {
 	
 	private boolean caseSensitive;
 
-	public LiteralPathElement(int pos, char[] literalText, boolean caseSensitive) {
+	public LiteralPathElement(int pos, char[] literalText, boolean caseSensitive, PathPatternInterner interner) {
 		super(pos);
 		this.len = literalText.length;
 		this.caseSensitive = caseSensitive;
 		if (caseSensitive) {
-			this.text = literalText;
+			this.text = interner.intern(literalText);
 		} else {
 			// Force all the text lower case to make matching faster
-			this.text = new char[literalText.length];
+			char[] lowerCaseText = new char[literalText.length];
 			for (int i = 0; i < len; i++) {
-				this.text[i] = Character.toLowerCase(literalText[i]);
+				lowerCaseText[i] = Character.toLowerCase(literalText[i]);
 			}
+			this.text = interner.intern(lowerCaseText);
 		}
 	}
 
+	private LiteralPathElement(int pos, LiteralPathElement original) {
+		super(pos);
+		this.text = original.text;
+		this.len = original.len;
+		this.caseSensitive = original.caseSensitive;
+	}
+
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new LiteralPathElement(pos, this);
+	}
+
 	@Override
 	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
 		if ((candidateIndex + text.length) > matchingContext.candidateLength) {
@@ -53,14 +66,15 @@ class LiteralPathElement extends PathElement {
 		}
 		if (caseSensitive) {
 			for (int i = 0; i < len; i++) {
-				if (matchingContext.candidate[candidateIndex++] != text[i]) {
+				if (matchingContext.candidate.charAt(candidateIndex++) != text[i]) {
 					return false;
 				}
 			}
 		} else {
 			for (int i = 0; i < len; i++) {
-				// TODO consider performance of this?
-				if (Character.toLowerCase(matchingContext.candidate[candidateIndex++]) != text[i]) {
+				// Only fold the candidate char if it is not already the same
+				char ch = matchingContext.candidate.charAt(candidateIndex++);
+				if (ch != text[i] && toLowerCase(ch) != text[i]) {
 					return false;
 				}
 			}
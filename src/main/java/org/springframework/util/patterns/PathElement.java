@@ -46,6 +46,17 @@ abstract class PathElement {
 		this.pos = pos;
 	}
 
+	/**
+	 * Copy the path element for use in another chain, sharing everything that never changes (e.g.
+	 * text and compiled regexes) rather than creating it again from its text. The copy is not
+	 * linked to a next element.
+	 * @param pos the position of the element in the pattern of the other chain
+	 * @param captureSlot the slot, in the pattern of the other chain, of the first variable
+	 * captured by the element (if it captures any)
+	 * @return the copy
+	 */
+	abstract PathElement copy(int pos, int captureSlot);
+
 	/**
 	 * @return the textual version of this path element
 	 */
@@ -85,4 +96,19 @@ abstract class PathElement {
 	public int getScore() {
 		return 0;
 	}
+
+	/**
+	 * Lower case a candidate character for case insensitive matching. Paths are nearly always
+	 * ASCII, for which this is a range check. Only other characters go through
+	 * {@link Character#toLowerCase(char)}, which some of them need as they lower case to ASCII
+	 * (e.g. the Kelvin sign).
+	 * @param ch a candidate character
+	 * @return the lower case form of the character
+	 */
+	static char toLowerCase(char ch) {
+		if (ch < 128) {
+			return (ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch);
+		}
+		return Character.toLowerCase(ch);
+	}
 }
\ No newline at end of file
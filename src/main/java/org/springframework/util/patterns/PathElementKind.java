@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+/**
+ * Identifies the different kinds of {@link PathElement} by number. The numbers are stored in
+ * snapshots so must never change.
+ *
+ * @author Andy Clement
+ * @see PathPatternSnapshot
+ */
+final class PathElementKind {
+
+	static final int SEPARATOR = 1;
+	static final int LITERAL = 2;
+	static final int SINGLE_CHAR_WILDCARDED = 3;
+	static final int WILDCARD = 4;
+	static final int GLOB = 5;
+	static final int CAPTURE_VARIABLE = 6;
+	static final int CAPTURE_THE_REST = 7;
+	static final int REGEX = 8;
+
+	private PathElementKind() {
+	}
+
+	/**
+	 * @param pe a path element
+	 * @return the kind of the path element
+	 */
+	static int of(PathElement pe) {
+		if (pe instanceof SeparatorPathElement) {
+			return SEPARATOR;
+		} else if (pe instanceof LiteralPathElement) {
+			return LITERAL;
+		} else if (pe instanceof SingleCharWildcardedPathElement) {
+			return SINGLE_CHAR_WILDCARDED;
+		} else if (pe instanceof WildcardPathElement) {
+			return WILDCARD;
+		} else if (pe instanceof GlobPathElement) {
+			return GLOB;
+		} else if (pe instanceof CaptureVariablePathElement) {
+			return CAPTURE_VARIABLE;
+		} else if (pe instanceof CaptureTheRestPathElement) {
+			return CAPTURE_THE_REST;
+		} else if (pe instanceof RegexPathElement) {
+			return REGEX;
+		}
+		throw new IllegalStateException("Unexpected path element " + pe);
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result of successfully matching a path with {@link PathPattern#matchAndCapture(CharSequence)}.
+ * Rather than the values of the captured variables it holds their start and end positions in the
+ * path, indexed by the capture slot each variable was given when the pattern was parsed. A value
+ * String is only created when it is asked for, and a map of all of them only if {@link #asMap()} is
+ * called. The path is referenced rather than copied, so it should not be modified while this result
+ * is in use.
+ *
+ * @author Andy Clement
+ */
+public final class PathMatchResult {
+
+	private final PathPattern pathPattern;
+
+	private final CharSequence path;
+
+	// The start and end of the variable in capture slot i are at 2*i and 2*i+1, -1 if it was not captured
+	private final int[] offsets;
+
+	// Built on first request
+	private Map<String, String> variables;
+
+	PathMatchResult(PathPattern pathPattern, CharSequence path, int[] offsets) {
+		this.pathPattern = pathPattern;
+		this.path = path;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * @return the pattern that matched
+	 */
+	public PathPattern getPathPattern() {
+		return pathPattern;
+	}
+
+	/**
+	 * @return the path that was matched
+	 */
+	public CharSequence getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the number of capture slots, the same as the number of variables the pattern captures
+	 */
+	public int getVariableCount() {
+		return offsets.length / 2;
+	}
+
+	/**
+	 * @param captureSlot the index of a captured variable
+	 * @return the position in the path where the captured variable starts or -1 if it was not captured
+	 */
+	public int getStart(int captureSlot) {
+		return offsets[captureSlot * 2];
+	}
+
+	/**
+	 * @param captureSlot the index of a captured variable
+	 * @return the position in the path after the end of the captured variable or -1 if it was not captured
+	 */
+	public int getEnd(int captureSlot) {
+		return offsets[captureSlot * 2 + 1];
+	}
+
+	/**
+	 * @param captureSlot the index of a captured variable
+	 * @return the value of the captured variable or null if it was not captured
+	 */
+	public String getValue(int captureSlot) {
+		int start = offsets[captureSlot * 2];
+		return (start == -1 ? null : path.subSequence(start, offsets[captureSlot * 2 + 1]).toString());
+	}
+
+	/**
+	 * @param variableName the name of a captured variable
+	 * @return the value of the captured variable or null if the pattern does not capture it
+	 */
+	public String getValue(String variableName) {
+		int captureSlot = pathPattern.getCaptureSlot(variableName);
+		return (captureSlot == -1 ? null : getValue(captureSlot));
+	}
+
+	/**
+	 * @return an unmodifiable map of all the captured variables, in the order they appear in the pattern
+	 */
+	public Map<String, String> asMap() {
+		if (variables == null) {
+			int variableCount = getVariableCount();
+			if (variableCount == 0) {
+				variables = Collections.emptyMap();
+			} else {
+				Map<String, String> map = new LinkedHashMap<>();
+				for (int i = 0; i < variableCount; i++) {
+					map.put(pathPattern.getCapturedVariableName(i), getValue(i));
+				}
+				variables = Collections.unmodifiableMap(map);
+			}
+		}
+		return variables;
+	}
+
+	public String toString() {
+		return "PathMatchResult(" + pathPattern + " -> " + path + ")";
+	}
+
+}
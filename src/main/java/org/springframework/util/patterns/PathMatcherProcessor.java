@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that generates a matcher class, using {@link PathMatcherSourceGenerator},
+ * for each type annotated with {@link GeneratePathMatcher}. The processor is not registered as a
+ * service so has to be named when compiling, e.g. with
+ * <tt>-processor org.springframework.util.patterns.PathMatcherProcessor</tt> or via the
+ * <tt>annotationProcessors</tt> setting of the maven-compiler-plugin.
+ *
+ * @author Andy Clement
+ */
+@SupportedAnnotationTypes("org.springframework.util.patterns.GeneratePathMatcher")
+public class PathMatcherProcessor extends AbstractProcessor {
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(GeneratePathMatcher.class)) {
+			GeneratePathMatcher request = element.getAnnotation(GeneratePathMatcher.class);
+			String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+			String className = (request.className().isEmpty() ? element.getSimpleName() + "PathMatcher"
+					: request.className());
+			String qualifiedClassName = (packageName.isEmpty() ? className : packageName + "." + className);
+			try {
+				List<String> patterns = new ArrayList<>(Arrays.asList(request.value()));
+				if (!request.patternFile().isEmpty()) {
+					patterns.addAll(readPatternFile(element, request.patternFile()));
+				}
+				PathPatternParser parser = new PathPatternParser(request.separator());
+				parser.setCaseSensitive(request.caseSensitive());
+				String source = new PathMatcherSourceGenerator(parser).generate(qualifiedClassName, patterns);
+				try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedClassName, element).openWriter()) {
+					writer.write(source);
+				}
+			} catch (PatternParseException ppe) {
+				processingEnv.getMessager().printMessage(Kind.ERROR, ppe.toDetailedString(), element);
+			} catch (IOException ioe) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"Unable to generate " + qualifiedClassName + ": " + ioe.getMessage(), element);
+			}
+		}
+		return true;
+	}
+
+	private List<String> readPatternFile(Element element, String patternFile) throws IOException {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(element);
+		IOException failure = null;
+		for (StandardLocation location : new StandardLocation[] { StandardLocation.CLASS_OUTPUT,
+				StandardLocation.SOURCE_PATH }) {
+			try {
+				FileObject file = processingEnv.getFiler().getResource(location, pkg.getQualifiedName(), patternFile);
+				String content = file.getCharContent(true).toString();
+				return PathMatcherSourceGenerator.readPatterns(Arrays.asList(content.split("\\r?\\n")));
+			} catch (IOException | IllegalArgumentException ex) {
+				failure = (ex instanceof IOException ? (IOException) ex : new IOException(ex));
+			}
+		}
+		throw failure;
+	}
+
+}
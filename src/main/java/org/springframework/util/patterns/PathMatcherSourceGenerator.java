@@ -0,0 +1,448 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.SourceVersion;
+
+/**
+ * Generates the Java source for a class that matches paths against a fixed set of patterns.
+ * The patterns are parsed when the source is generated, the generated class contains straight
+ * line code for each pattern that checks the separators and literals directly and extracts the
+ * captured variables into the fields of a class specific to that pattern. Nothing is parsed when
+ * the generated class is used. For the patterns <tt>/customer/{id}</tt> and <tt>/order/{*rest}</tt>
+ * the generated class (called Routes here) can be used like this:
+ * <pre class="code">
+ * Routes.Route0 customer = Routes.matchRoute0(path);
+ * if (customer != null) {
+ *     lookup(customer.id);
+ * }
+ * int route = Routes.match(path); // index of the first pattern that matches, or -1
+ * boolean orders = Routes.matchesRoute1(path);
+ * </pre>
+ * The <tt>matchesRouteN</tt> methods, and <tt>match</tt> which uses them, only check the path:
+ * they create no route objects and no strings for the variables (a variable with a regex
+ * constraint still needs a regex matcher). A variable whose name is a Java keyword is held in a field with
+ * underscores appended to the name (<tt>{class}</tt> is in the field <tt>class_</tt>), as many
+ * as are needed to be different from the names of the other variables of the pattern.
+ * Patterns containing regex or glob segments are not turned into code, the generated class parses
+ * just those patterns when it is loaded and uses the resulting {@link PathPattern}. The source can
+ * be generated by running this class on a file of patterns, for example from the build, or via
+ * the {@link PathMatcherProcessor} annotation processor.
+ *
+ * @author Andy Clement
+ */
+public class PathMatcherSourceGenerator {
+
+	private final PathPatternParser parser;
+
+	/**
+	 * @param parser the parser to parse the patterns with, its separator and case sensitivity are
+	 * used by the generated code
+	 */
+	public PathMatcherSourceGenerator(PathPatternParser parser) {
+		this.parser = parser;
+	}
+
+	/**
+	 * @param qualifiedClassName the name of the class to generate, including the package
+	 * @param patterns the patterns the class should match, in order
+	 * @return the source code for the class
+	 * @throws PatternParseException if one of the patterns cannot be parsed
+	 */
+	public String generate(String qualifiedClassName, List<String> patterns) {
+		List<PathPattern> pathPatterns = new ArrayList<>();
+		for (String pattern : patterns) {
+			pathPatterns.add(parser.parse(pattern));
+		}
+		int lastDot = qualifiedClassName.lastIndexOf('.');
+		String className = qualifiedClassName.substring(lastDot + 1);
+		SourceBuilder source = new SourceBuilder();
+		if (lastDot != -1) {
+			source.line("package " + qualifiedClassName.substring(0, lastDot) + ";");
+			source.line("");
+		}
+		source.line("/**");
+		source.line(" * Matches paths against these patterns, generated by " + getClass().getName() + ".");
+		source.line(" * <ol start=\"0\">");
+		for (PathPattern pathPattern : pathPatterns) {
+			source.line(" * <li><tt>" + comment(pathPattern.getPatternString()) + "</tt>");
+		}
+		source.line(" * </ol>");
+		source.line(" */");
+		source.line("public final class " + className + " {");
+		source.line("");
+		for (int i = 0; i < pathPatterns.size(); i++) {
+			generateStaticFields(source, i, pathPatterns.get(i));
+		}
+		source.line("\tprivate " + className + "() {");
+		source.line("\t}");
+		source.line("");
+		source.line("\t/**");
+		source.line("\t * @param path the path to match");
+		source.line("\t * @return the index of the first pattern that matches the path, or -1 if none match");
+		source.line("\t */");
+		source.line("\tpublic static int match(String path) {");
+		for (int i = 0; i < pathPatterns.size(); i++) {
+			source.line("\t\tif (matchesRoute" + i + "(path)) {");
+			source.line("\t\t\treturn " + i + ";");
+			source.line("\t\t}");
+		}
+		source.line("\t\treturn -1;");
+		source.line("\t}");
+		source.line("");
+		for (int i = 0; i < pathPatterns.size(); i++) {
+			generateRoute(source, i, pathPatterns.get(i));
+		}
+		generateHelpers(source);
+		source.line("}");
+		return source.toString();
+	}
+
+	private void generateStaticFields(SourceBuilder source, int route, PathPattern pathPattern) {
+		if (!isGeneratable(pathPattern)) {
+			source.line("\tprivate static final org.springframework.util.patterns.PathPattern PATTERN_" + route + ";");
+			source.line("");
+			source.line("\tstatic {");
+			source.line("\t\torg.springframework.util.patterns.PathPatternParser parser = "
+					+ "new org.springframework.util.patterns.PathPatternParser(" + javaChar(pathPattern.getSeparator()) + ");");
+			source.line("\t\tparser.setCaseSensitive(" + pathPattern.isCaseSensitive() + ");");
+			source.line("\t\tPATTERN_" + route + " = parser.parse(" + javaString(pathPattern.getPatternString()) + ");");
+			source.line("\t}");
+			source.line("");
+			return;
+		}
+		int slot = 0;
+		for (PathElement pe = pathPattern.getHeadSection(); pe != null; pe = pe.next) {
+			if (pe instanceof CaptureVariablePathElement) {
+				String regex = ((CaptureVariablePathElement) pe).getConstraintRegex();
+				if (regex != null) {
+					source.line("\tprivate static final java.util.regex.Pattern CONSTRAINT_" + route + "_" + slot
+							+ " = java.util.regex.Pattern.compile(" + javaString(regex)
+							+ (pathPattern.isCaseSensitive() ? "" : ", java.util.regex.Pattern.CASE_INSENSITIVE") + ");");
+					source.line("");
+				}
+			}
+			slot += pe.getCaptureCount();
+		}
+	}
+
+	private void generateRoute(SourceBuilder source, int route, PathPattern pathPattern) {
+		String routeClass = "Route" + route;
+		int captureCount = pathPattern.getCapturedVariableCount();
+		String[] fields = fieldNames(pathPattern);
+		source.line("\t/**");
+		source.line("\t * The variables captured by <tt>" + comment(pathPattern.getPatternString()) + "</tt>.");
+		source.line("\t */");
+		source.line("\tpublic static final class " + routeClass + " {");
+		source.line("");
+		for (int i = 0; i < captureCount; i++) {
+			source.line("\t\tpublic final String " + fields[i] + ";");
+			source.line("");
+		}
+		StringBuilder parameters = new StringBuilder();
+		for (int i = 0; i < captureCount; i++) {
+			parameters.append(i == 0 ? "" : ", ").append("String ").append(fields[i]);
+		}
+		source.line("\t\t" + routeClass + "(" + parameters + ") {");
+		for (int i = 0; i < captureCount; i++) {
+			source.line("\t\t\tthis." + fields[i] + " = " + fields[i] + ";");
+		}
+		source.line("\t\t}");
+		source.line("");
+		source.line("\t}");
+		source.line("");
+		source.line("\t/**");
+		source.line("\t * Match <tt>" + comment(pathPattern.getPatternString()) + "</tt>.");
+		source.line("\t * @param path the path to match");
+		source.line("\t * @return the captured variables, or null if the path does not match");
+		source.line("\t */");
+		source.line("\tpublic static " + routeClass + " matchRoute" + route + "(String path) {");
+		StringBuilder arguments = new StringBuilder();
+		if (isGeneratable(pathPattern)) {
+			generateMatching(source, route, pathPattern, true);
+			for (int i = 0; i < captureCount; i++) {
+				arguments.append(i == 0 ? "" : ", ").append("capture").append(i);
+			}
+		} else {
+			source.line("\t\torg.springframework.util.patterns.PathMatchResult result = PATTERN_" + route
+					+ ".matchAndCapture(path);");
+			source.line("\t\tif (result == null) {");
+			source.line("\t\t\treturn null;");
+			source.line("\t\t}");
+			for (int i = 0; i < captureCount; i++) {
+				arguments.append(i == 0 ? "" : ", ").append("result.getValue(").append(i).append(")");
+			}
+		}
+		source.line("\t\treturn new " + routeClass + "(" + arguments + ");");
+		source.line("\t}");
+		source.line("");
+		source.line("\t/**");
+		source.line("\t * Check the path against <tt>" + comment(pathPattern.getPatternString()) + "</tt> without capturing anything.");
+		source.line("\t * @param path the path to match");
+		source.line("\t * @return true if the path matches");
+		source.line("\t */");
+		source.line("\tpublic static boolean matchesRoute" + route + "(String path) {");
+		if (isGeneratable(pathPattern)) {
+			generateMatching(source, route, pathPattern, false);
+			source.line("\t\treturn true;");
+		} else {
+			source.line("\t\treturn PATTERN_" + route + ".matches(path);");
+		}
+		source.line("\t}");
+		source.line("");
+	}
+
+	/**
+	 * @return the names of the fields holding the captured variables of the pattern, in capture
+	 * slot order. Java keywords have underscores appended until they differ from every other name.
+	 */
+	private static String[] fieldNames(PathPattern pathPattern) {
+		int captureCount = pathPattern.getCapturedVariableCount();
+		String[] fields = new String[captureCount];
+		Set<String> used = new HashSet<>();
+		for (int i = 0; i < captureCount; i++) {
+			used.add(pathPattern.getCapturedVariableName(i));
+		}
+		for (int i = 0; i < captureCount; i++) {
+			String name = pathPattern.getCapturedVariableName(i);
+			if (SourceVersion.isKeyword(name)) {
+				do {
+					name += "_";
+				} while (!used.add(name));
+			}
+			fields[i] = name;
+		}
+		return fields;
+	}
+
+	/**
+	 * Generate the code that consumes the path a path element at a time, this relies on each kind
+	 * of path element consuming a fixed amount of the path (its own length, or up to the next
+	 * separator, or all the rest) so no backtracking is ever needed. When capturing, the code leaves
+	 * the variable in capture slot i in the local variable <tt>capture</tt>i and returns null if the
+	 * path does not match, otherwise it returns false.
+	 */
+	private void generateMatching(SourceBuilder source, int route, PathPattern pathPattern, boolean capture) {
+		String fail = (capture ? "\t\t\treturn null;" : "\t\t\treturn false;");
+		String separator = javaChar(pathPattern.getSeparator());
+		boolean caseSensitive = pathPattern.isCaseSensitive();
+		source.line("\t\tint length = path.length();");
+		source.line("\t\tint pos = 0;");
+		int slot = 0;
+		for (PathElement pe = pathPattern.getHeadSection(); pe != null; pe = pe.next) {
+			if (pe instanceof SeparatorPathElement) {
+				source.line("\t\tif (pos == length || path.charAt(pos) != " + separator + ") {");
+				source.line(fail);
+				source.line("\t\t}");
+				source.line("\t\tpos++;");
+			} else if (pe instanceof LiteralPathElement || pe instanceof SingleCharWildcardedPathElement) {
+				String helper = (pe instanceof LiteralPathElement ? "literal" : "wildcarded");
+				String text = pe.getText();
+				source.line("\t\tif (!" + helper + "(path, pos, " + javaString(text) + ", " + caseSensitive + ")) {");
+				source.line(fail);
+				source.line("\t\t}");
+				source.line("\t\tpos += " + text.length() + ";");
+			} else if (pe instanceof WildcardPathElement) {
+				source.line("\t\tpos = segmentEnd(path, pos, " + separator + ");");
+			} else if (pe instanceof CaptureVariablePathElement) {
+				source.line("\t\tint end" + slot + " = segmentEnd(path, pos, " + separator + ");");
+				if (((CaptureVariablePathElement) pe).getConstraintRegex() != null) {
+					source.line("\t\tif (!CONSTRAINT_" + route + "_" + slot + ".matcher(path).region(pos, end" + slot
+							+ ").matches()) {");
+					source.line(fail);
+					source.line("\t\t}");
+				}
+				if (capture) {
+					source.line("\t\tString capture" + slot + " = path.substring(pos, end" + slot + ");");
+				}
+				source.line("\t\tpos = end" + slot + ";");
+			} else if (pe instanceof CaptureTheRestPathElement) {
+				if (capture) {
+					source.line("\t\tString capture" + slot + " = path.substring(pos);");
+				}
+				source.line("\t\tpos = length;");
+			}
+			slot += pe.getCaptureCount();
+		}
+		source.line("\t\tif (pos != length) {");
+		source.line(fail);
+		source.line("\t\t}");
+	}
+
+	private void generateHelpers(SourceBuilder source) {
+		source.line("\tprivate static int segmentEnd(String path, int pos, char separator) {");
+		source.line("\t\tint end = path.indexOf(separator, pos);");
+		source.line("\t\treturn (end == -1 ? path.length() : end);");
+		source.line("\t}");
+		source.line("");
+		source.line("\t// When not case sensitive the text is already lower case");
+		source.line("\tprivate static boolean literal(String path, int pos, String text, boolean caseSensitive) {");
+		source.line("\t\tif (pos + text.length() > path.length()) {");
+		source.line("\t\t\treturn false;");
+		source.line("\t\t}");
+		source.line("\t\tfor (int i = 0; i < text.length(); i++) {");
+		source.line("\t\t\tchar ch = path.charAt(pos + i);");
+		source.line("\t\t\tif (ch != text.charAt(i) && (caseSensitive || Character.toLowerCase(ch) != text.charAt(i))) {");
+		source.line("\t\t\t\treturn false;");
+		source.line("\t\t\t}");
+		source.line("\t\t}");
+		source.line("\t\treturn true;");
+		source.line("\t}");
+		source.line("");
+		source.line("\tprivate static boolean wildcarded(String path, int pos, String text, boolean caseSensitive) {");
+		source.line("\t\tif (pos + text.length() > path.length()) {");
+		source.line("\t\t\treturn false;");
+		source.line("\t\t}");
+		source.line("\t\tfor (int i = 0; i < text.length(); i++) {");
+		source.line("\t\t\tchar ch = path.charAt(pos + i);");
+		source.line("\t\t\tchar t = text.charAt(i);");
+		source.line("\t\t\tif (t != '?' && (caseSensitive ? ch : Character.toLowerCase(ch)) != t) {");
+		source.line("\t\t\t\treturn false;");
+		source.line("\t\t\t}");
+		source.line("\t\t}");
+		source.line("\t\treturn true;");
+		source.line("\t}");
+		source.line("");
+	}
+
+	/**
+	 * @return true if code can be generated for every path element of the pattern
+	 */
+	private static boolean isGeneratable(PathPattern pathPattern) {
+		for (PathElement pe = pathPattern.getHeadSection(); pe != null; pe = pe.next) {
+			if (pe instanceof RegexPathElement || pe instanceof GlobPathElement) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String javaString(String text) {
+		StringBuilder s = new StringBuilder("\"");
+		for (int i = 0; i < text.length(); i++) {
+			s.append(escape(text.charAt(i), '"'));
+		}
+		return s.append('"').toString();
+	}
+
+	private static String javaChar(char ch) {
+		return "'" + escape(ch, '\'') + "'";
+	}
+
+	private static String escape(char ch, char quote) {
+		if (ch == quote || ch == '\\') {
+			return "\\" + ch;
+		} else if (ch < 32 || ch >= 127) {
+			return String.format("\\u%04x", (int) ch);
+		}
+		return String.valueOf(ch);
+	}
+
+	/**
+	 * Make text safe to include in a comment, even unicode escapes are processed in comments.
+	 */
+	private static String comment(String text) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (ch == '*' || ch == '\\' || ch == '<' || ch == '>' || ch == '&' || ch == '@' || ch >= 127) {
+				s.append("&#").append((int) ch).append(';');
+			} else {
+				s.append(ch);
+			}
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Generate a matcher class from a file of patterns, one per line. Blank lines and lines
+	 * starting with # are ignored.
+	 * <pre class="code">
+	 * java org.springframework.util.patterns.PathMatcherSourceGenerator routes.txt com.example.Routes target/generated-sources
+	 * </pre>
+	 * The options <tt>-caseInsensitive</tt> and <tt>-separator c</tt> may precede the arguments.
+	 */
+	public static void main(String[] args) throws IOException {
+		PathPatternParser parser = null;
+		boolean caseSensitive = true;
+		int arg = 0;
+		while (arg < args.length && args[arg].startsWith("-")) {
+			if (args[arg].equals("-caseInsensitive")) {
+				caseSensitive = false;
+				arg++;
+			} else if (args[arg].equals("-separator") && arg + 1 < args.length && args[arg + 1].length() == 1) {
+				parser = new PathPatternParser(args[arg + 1].charAt(0));
+				arg += 2;
+			} else {
+				break;
+			}
+		}
+		if (args.length - arg != 3) {
+			System.err.println("Usage: PathMatcherSourceGenerator [-caseInsensitive] [-separator c] "
+					+ "<patternFile> <qualifiedClassName> <outputDirectory>");
+			System.exit(1);
+		}
+		if (parser == null) {
+			parser = new PathPatternParser();
+		}
+		parser.setCaseSensitive(caseSensitive);
+		List<String> patterns = readPatterns(Files.readAllLines(new File(args[arg]).toPath(), StandardCharsets.UTF_8));
+		String qualifiedClassName = args[arg + 1];
+		File output = new File(args[arg + 2], qualifiedClassName.replace('.', File.separatorChar) + ".java");
+		output.getParentFile().mkdirs();
+		String source = new PathMatcherSourceGenerator(parser).generate(qualifiedClassName, patterns);
+		Files.write(output.toPath(), source.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param lines the lines of a pattern file
+	 * @return the patterns in the file
+	 */
+	static List<String> readPatterns(List<String> lines) {
+		List<String> patterns = new ArrayList<>();
+		for (String line : lines) {
+			String pattern = line.trim();
+			if (!pattern.isEmpty() && !pattern.startsWith("#")) {
+				patterns.add(pattern);
+			}
+		}
+		return patterns;
+	}
+
+	private static class SourceBuilder {
+
+		private final StringBuilder source = new StringBuilder();
+
+		void line(String line) {
+			source.append(line).append('\n');
+		}
+
+		public String toString() {
+			return source.toString();
+		}
+
+	}
+
+}
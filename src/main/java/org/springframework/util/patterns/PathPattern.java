@@ -15,9 +15,13 @@
  */
 package org.springframework.util.patterns;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
 
 /**
  * Represents a parsed path pattern. Includes a chain of path elements
@@ -30,6 +34,13 @@ public class PathPattern implements Comparable<PathPattern> {
 
 	private final static Map<String, String> NO_VARIABLES = Collections.emptyMap();
 
+	// Bits of the value returned by getFlags()
+	static final int CATCH_ALL = 1;
+	static final int ENDS_WITH_SEPARATOR_WILDCARD = 2;
+	static final int EXACT_SEPARATOR_COUNT = 4;
+	static final int ENDS_WITH_SEPARATOR = 8;
+	static final int CONSTRAINT_CHECKS_DEFERRED = 16;
+
 	/** First path element in the parsed chain of path elements for this pattern */
 	private PathElement head;
 
@@ -45,6 +56,9 @@ public class PathPattern implements Comparable<PathPattern> {
 	/** How many variables are captured in this pattern */
 	private int capturedVariableCount;
 
+	/** Names of the captured variables, indexed by the capture slot assigned at parse time */
+	private final String[] capturedVariableNames;
+
 	/**
 	 * The normalized length is trying to measure the 'active' part of the pattern. It is computed
 	 * by assuming all captured variables have a normalized length of 1. Effectively this means changing
@@ -71,15 +85,56 @@ public class PathPattern implements Comparable<PathPattern> {
 	/** Does the pattern end with {*...} */
 	private boolean isCatchAll = false;
 
+	/** The shortest candidate path this pattern could match */
+	int minLength;
+
+	/** The longest candidate path this pattern could match, Integer.MAX_VALUE if unbounded */
+	int maxLength;
+
+	/** The number of separators a matching candidate must contain, at least */
+	int minSeparatorCount;
+
+	/** True if a matching candidate has exactly minSeparatorCount separators */
+	boolean exactSeparatorCount = true;
+
+	/** Must a matching candidate end with a separator */
+	boolean endsWithSeparator;
+
+	/** Bits for the literal segments a matching candidate must contain, see {@link SegmentFingerprint} */
+	private final long literalFingerprint;
+
+	/** Encodes the result of {@link #compareTo(PathPattern)}, see {@link #getSortKey()} */
+	private final long sortKey;
+
+	/** Was the pattern parsed with constraint checks deferred (see {@link PathPatternParser#setDeferConstraintChecks(boolean)}) */
+	private final boolean constraintChecksDeferred;
+
+	/** If the pattern has been compiled, the generated matcher that is used instead of the chain */
+	private CompiledPathMatcher compiledMatcher;
+
 	public PathPattern(String patternText, PathElement head, char separator, boolean caseSensitive) {
+		this(patternText, head, separator, caseSensitive, false);
+	}
+
+	PathPattern(String patternText, PathElement head, char separator, boolean caseSensitive,
+			boolean constraintChecksDeferred) {
 		this.head = head;
 		this.patternString = patternText;
 		this.separator = separator;
 		this.caseSensitive = caseSensitive;
+		this.constraintChecksDeferred = constraintChecksDeferred;
 		// Compute fields for fast comparison
+		List<String> variableNames = new ArrayList<>();
 		PathElement s = head;
 		while (s != null) {
 			this.capturedVariableCount += s.getCaptureCount();
+			if (s instanceof CaptureVariablePathElement) {
+				variableNames.add(((CaptureVariablePathElement) s).getVariableName());
+			} else if (s instanceof CaptureTheRestPathElement) {
+				variableNames.add(((CaptureTheRestPathElement) s).getVariableName());
+			} else if (s instanceof RegexPathElement) {
+				variableNames.addAll(((RegexPathElement) s).getVariableNames());
+			}
 			this.normalizedLength += s.getNormalizedLength();
 			this.score += s.getScore();
 			if (s instanceof CaptureTheRestPathElement) {
@@ -88,8 +143,97 @@ public class PathPattern implements Comparable<PathPattern> {
 			if (s instanceof SeparatorPathElement && s.next!=null && s.next instanceof WildcardPathElement && s.next.next == null) {
 				this.endsWithSeparatorWildcard=true;
 			}
+			computeCandidateBounds(s);
 			s = s.next;
 		}
+		this.capturedVariableNames = variableNames.toArray(new String[variableNames.size()]);
+		this.literalFingerprint = SegmentFingerprint.forPattern(head);
+		this.sortKey = computeSortKey();
+	}
+
+	/**
+	 * Create a pattern whose computed state is already known, as it is when the pattern is loaded
+	 * from a {@link PathPatternSnapshot}, rather than walking the chain to compute it.
+	 * @param flags the boolean state of the pattern, as returned by {@link #getFlags()}
+	 */
+	PathPattern(String patternText, PathElement head, char separator, boolean caseSensitive,
+			String[] capturedVariableNames, int score, int normalizedLength, int minLength, int maxLength,
+			int minSeparatorCount, int flags, long literalFingerprint) {
+		this.head = head;
+		this.patternString = patternText;
+		this.separator = separator;
+		this.caseSensitive = caseSensitive;
+		this.capturedVariableCount = capturedVariableNames.length;
+		this.capturedVariableNames = capturedVariableNames;
+		this.score = score;
+		this.normalizedLength = normalizedLength;
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+		this.minSeparatorCount = minSeparatorCount;
+		this.isCatchAll = (flags & CATCH_ALL) != 0;
+		this.endsWithSeparatorWildcard = (flags & ENDS_WITH_SEPARATOR_WILDCARD) != 0;
+		this.exactSeparatorCount = (flags & EXACT_SEPARATOR_COUNT) != 0;
+		this.endsWithSeparator = (flags & ENDS_WITH_SEPARATOR) != 0;
+		this.constraintChecksDeferred = (flags & CONSTRAINT_CHECKS_DEFERRED) != 0;
+		this.literalFingerprint = literalFingerprint;
+		this.sortKey = computeSortKey();
+	}
+
+	/**
+	 * Accumulate what the path element says about the length and number of separators of any
+	 * candidate that could match, so most candidates can be rejected without walking the chain.
+	 */
+	private void computeCandidateBounds(PathElement pe) {
+		if (pe instanceof SeparatorPathElement) {
+			minLength++;
+			minSeparatorCount++;
+		} else if (pe instanceof LiteralPathElement) {
+			minLength += pe.getNormalizedLength();
+		} else if (pe instanceof SingleCharWildcardedPathElement) {
+			minLength += pe.getNormalizedLength();
+			// A '?' may match a separator
+			exactSeparatorCount = false;
+		} else if (pe instanceof GlobPathElement) {
+			// Everything apart from the '*' characters matches exactly one character
+			minLength += pe.getNormalizedLength() - pe.getWildcardCount();
+			maxLength = Integer.MAX_VALUE;
+		} else if (pe instanceof CaptureTheRestPathElement) {
+			maxLength = Integer.MAX_VALUE;
+			exactSeparatorCount = false;
+		} else {
+			// Wildcards, captures and regex segments stay within one segment but may be any length
+			maxLength = Integer.MAX_VALUE;
+		}
+		if (maxLength != Integer.MAX_VALUE) {
+			maxLength = minLength;
+		}
+		endsWithSeparator = (pe instanceof SeparatorPathElement && pe.next == null);
+	}
+
+	/**
+	 * Quick checks on the candidate that must all pass if a full match is possible.
+	 * @return false if the candidate cannot match the pattern
+	 */
+	private boolean couldMatch(CharSequence path) {
+		int length = path.length();
+		if (length < minLength || length > maxLength) {
+			return false;
+		}
+		if (endsWithSeparator && path.charAt(length - 1) != separator) {
+			return false;
+		}
+		if (path instanceof TokenizedPath && ((TokenizedPath) path).getSeparator() == separator) {
+			// The separators have already been counted and the segments fingerprinted
+			TokenizedPath tokenizedPath = (TokenizedPath) path;
+			int separatorCount = tokenizedPath.getSeparatorCount();
+			if (separatorCount < minSeparatorCount || (exactSeparatorCount && separatorCount != minSeparatorCount)) {
+				return false;
+			}
+			if ((literalFingerprint & ~tokenizedPath.getLiteralFingerprint()) != 0) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -97,10 +241,33 @@ public class PathPattern implements Comparable<PathPattern> {
 	 * @return true if the path matches this pattern
 	 */
 	public boolean matches(String path) {
-		MatchingContext matchingContext = new MatchingContext(path,false);
+		return matches((CharSequence) path);
+	}
+
+	/**
+	 * @param path the candidate path to attempt to match against this pattern
+	 * @return true if the path matches this pattern
+	 */
+	public boolean matches(CharSequence path) {
+		return matches(path, new MatchingContext());
+	}
+
+	/**
+	 * @param path the candidate path to attempt to match against this pattern
+	 * @param matchingContext a context (that may be reused across matches) to use for the match
+	 * @return true if the path matches this pattern
+	 */
+	public boolean matches(CharSequence path, MatchingContext matchingContext) {
 		if (head == null) {
 			return (path.length() == 0);
 		}
+		if (!couldMatch(path)) {
+			return false;
+		}
+		if (compiledMatcher != null) {
+			return compiledMatcher.matches(untokenized(path), false, null);
+		}
+		matchingContext.reset(path, separator, false, false);
 		return head.matches(0, matchingContext);
 	}
 	
@@ -109,11 +276,30 @@ public class PathPattern implements Comparable<PathPattern> {
 	 * @return true if the pattern matches as much of the path as is supplied
 	 */
 	public boolean matchStart(String path) {
-		MatchingContext matchingContext = new MatchingContext(path,false);
-		matchingContext.setMatchStartMatching(true);
+		return matchStart((CharSequence) path);
+	}
+
+	/**
+	 * @param path the path to check against the pattern
+	 * @return true if the pattern matches as much of the path as is supplied
+	 */
+	public boolean matchStart(CharSequence path) {
+		return matchStart(path, new MatchingContext());
+	}
+
+	/**
+	 * @param path the path to check against the pattern
+	 * @param matchingContext a context (that may be reused across matches) to use for the match
+	 * @return true if the pattern matches as much of the path as is supplied
+	 */
+	public boolean matchStart(CharSequence path, MatchingContext matchingContext) {
 		if (head == null) {
 			return (path.length() == 0);
 		}
+		if (compiledMatcher != null) {
+			return compiledMatcher.matches(untokenized(path), true, null);
+		}
+		matchingContext.reset(path, separator, true, false);
 		return head.matches(0, matchingContext);
 	}
 
@@ -122,12 +308,114 @@ public class PathPattern implements Comparable<PathPattern> {
 	 * @return a map of extracted variables - an empty map if no variables extracted
 	 */
 	public Map<String, String> matchAndExtract(String path) {
-		MatchingContext matchingContext = new MatchingContext(path,true);
-		if (head.matches(0, matchingContext)) {
-			return matchingContext.getExtractedVariables();
-		} else {
+		return matchAndExtract((CharSequence) path);
+	}
+
+	/**
+	 * @param path a path to match against this pattern
+	 * @return a map of extracted variables - an empty map if no variables extracted
+	 */
+	public Map<String, String> matchAndExtract(CharSequence path) {
+		return matchAndExtract(path, new MatchingContext());
+	}
+
+	/**
+	 * Match the path and extract the variables. The returned map is created for this match, it is
+	 * not changed when the context is used again.
+	 * @param path a path to match against this pattern
+	 * @param matchingContext a context (that may be reused across matches) to use for the match
+	 * @return a map of extracted variables - an empty map if no variables extracted
+	 */
+	public Map<String, String> matchAndExtract(CharSequence path, MatchingContext matchingContext) {
+		if (head == null || !matchRecordingCaptures(path, matchingContext)) {
 			return NO_VARIABLES;
 		}
+		int[] captures = matchingContext.captures;
+		for (int i = 0; i < capturedVariableNames.length; i++) {
+			int start = captures[i * 2];
+			matchingContext.set(capturedVariableNames[i],
+					(start == -1 ? null : path.subSequence(start, captures[i * 2 + 1]).toString()));
+		}
+		return matchingContext.getExtractedVariables();
+	}
+
+	/**
+	 * Match the path, recording where the captured variables are rather than extracting them. No
+	 * variable values are created unless they are asked for via the result.
+	 * @param path a path to match against this pattern
+	 * @return the result of the match or null if the path does not match
+	 */
+	public PathMatchResult matchAndCapture(CharSequence path) {
+		return matchAndCapture(path, new MatchingContext());
+	}
+
+	/**
+	 * Match the path, recording where the captured variables are rather than extracting them. No
+	 * variable values are created unless they are asked for via the result.
+	 * @param path a path to match against this pattern
+	 * @param matchingContext a context (that may be reused across matches) to use for the match
+	 * @return the result of the match or null if the path does not match
+	 */
+	public PathMatchResult matchAndCapture(CharSequence path, MatchingContext matchingContext) {
+		if (head == null) {
+			return (path.length() == 0 ? new PathMatchResult(this, path, new int[0]) : null);
+		}
+		if (!matchRecordingCaptures(path, matchingContext)) {
+			return null;
+		}
+		return new PathMatchResult(this, path, Arrays.copyOf(matchingContext.captures, capturedVariableCount * 2));
+	}
+
+	/**
+	 * Match the path, on success the start and end positions of the variable in capture slot i are at
+	 * 2*i and 2*i+1 in the captures of the matching context.
+	 */
+	boolean matchRecordingCaptures(CharSequence path, MatchingContext matchingContext) {
+		if (!couldMatch(path)) {
+			return false;
+		}
+		matchingContext.reset(path, separator, false, true);
+		int[] captures = matchingContext.getCaptures(capturedVariableCount);
+		if (compiledMatcher != null) {
+			return compiledMatcher.matches(untokenized(path), false, captures);
+		}
+		return head.matches(0, matchingContext);
+	}
+
+	/**
+	 * Generated matchers do their own scanning so read the underlying path directly.
+	 */
+	private static CharSequence untokenized(CharSequence path) {
+		return (path instanceof TokenizedPath ? ((TokenizedPath) path).getPath() : path);
+	}
+
+	/**
+	 * Attempt to match the remainder of this pattern, starting at the specified path element
+	 * of its chain, against the candidate path from the specified position.
+	 * @param pathElement the path element (from this pattern's chain) to start matching at
+	 * @param candidateIndex the position in the candidate path to start matching from
+	 * @param path the candidate path
+	 * @param matchingContext the context to use for the match
+	 * @return true if the rest of the pattern matches the rest of the path
+	 */
+	boolean matchesFrom(PathElement pathElement, int candidateIndex, CharSequence path, MatchingContext matchingContext) {
+		matchingContext.reset(path, separator, false, false);
+		return pathElement.matches(candidateIndex, matchingContext);
+	}
+
+	/**
+	 * Generate a matcher class for this pattern that will be used instead of walking the
+	 * chain of path elements. Patterns that cannot be compiled keep using their chain.
+	 */
+	void compile() {
+		this.compiledMatcher = PathPatternCompiler.compile(this);
+	}
+
+	/**
+	 * @return true if matching is performed by a generated matcher rather than the chain of path elements
+	 */
+	public boolean isCompiled() {
+		return compiledMatcher != null;
 	}
 
 	/**
@@ -197,28 +485,38 @@ public class PathPattern implements Comparable<PathPattern> {
 			return -1;
 		}
 		// 2) catchall patterns are sorted last. If both catchall then the
-		// length is considered
-		if (isCatchAll()) {
-			if (p.isCatchAll()) {
-				int lenDifference = this.getNormalizedLength() - p.getNormalizedLength();
-				if (lenDifference != 0) {
-					return (lenDifference < 0) ? +1 : -1;
-				}
-			} else {
-				return +1;
-			}
-		} else if (p.isCatchAll()) {
-			return -1;
-		}
+		// length is considered before the score
 		// 3) This will sort such that if they differ in terms of wildcards or
 		// captured variable counts, the one with the most will be sorted last
-		int score = this.getScore() - p.getScore();
-		if (score != 0) {
-			return (score < 0) ? -1 : +1;
-		}
 		// 4) longer is better
-		int lenDifference = this.getNormalizedLength() - p.getNormalizedLength();
-		return (lenDifference < 0) ? +1 : (lenDifference == 0 ? 0 : -1);
+		// All of which is encoded in the sort key
+		return Long.compare(this.sortKey, p.sortKey);
+	}
+
+	/**
+	 * Pack the parts of the comparison made by {@link #compareTo(PathPattern)} into a long so that
+	 * comparing two patterns is comparing two longs. From the most significant end: bit 63 is
+	 * always clear, bit 62 is set for catch all patterns, then 31 bits each for the score and the
+	 * inverted normalized length (in the opposite order for catch all patterns, which compare
+	 * their length first).
+	 */
+	private long computeSortKey() {
+		long invertedLength = Integer.MAX_VALUE - normalizedLength;
+		if (isCatchAll) {
+			return (1L << 62) | (invertedLength << 31) | score;
+		}
+		return ((long) score << 31) | invertedLength;
+	}
+
+	/**
+	 * A key consistent with {@link #compareTo(PathPattern)}: for two patterns p1 and p2,
+	 * {@code p1.compareTo(p2)} is {@code Long.compare(p1.getSortKey(), p2.getSortKey())}. It is
+	 * never negative, so it can be used to sort patterns with a primitive or radix sort, as
+	 * {@link PathPatterns#sort(java.util.List)} does.
+	 * @return the sort key of this pattern
+	 */
+	public long getSortKey() {
+		return sortKey;
 	}
 
 	public int getScore() {
@@ -240,6 +538,24 @@ public class PathPattern implements Comparable<PathPattern> {
 		return normalizedLength;
 	}
 
+	/**
+	 * @return the boolean state of the pattern, a combination of {@link #CATCH_ALL},
+	 * {@link #ENDS_WITH_SEPARATOR_WILDCARD}, {@link #EXACT_SEPARATOR_COUNT}, {@link #ENDS_WITH_SEPARATOR}
+	 * and {@link #CONSTRAINT_CHECKS_DEFERRED}
+	 */
+	int getFlags() {
+		return (isCatchAll ? CATCH_ALL : 0) | (endsWithSeparatorWildcard ? ENDS_WITH_SEPARATOR_WILDCARD : 0)
+				| (exactSeparatorCount ? EXACT_SEPARATOR_COUNT : 0) | (endsWithSeparator ? ENDS_WITH_SEPARATOR : 0)
+				| (constraintChecksDeferred ? CONSTRAINT_CHECKS_DEFERRED : 0);
+	}
+
+	/**
+	 * @return true if the pattern was parsed with constraint checks deferred
+	 */
+	boolean isConstraintChecksDeferred() {
+		return constraintChecksDeferred;
+	}
+
 	public boolean empty() {
 		return head == null;
 	}
@@ -271,9 +587,44 @@ public class PathPattern implements Comparable<PathPattern> {
 		return separator;
 	}
 
+	public boolean isCaseSensitive() {
+		return caseSensitive;
+	}
+
 	public int getCapturedVariableCount() {
 		return capturedVariableCount;
 	}
+
+	/**
+	 * A fingerprint of the literal segments in the pattern. When a {@link TokenizedPath} is matched
+	 * against many patterns, this is compared with {@link TokenizedPath#getLiteralFingerprint()} to
+	 * reject patterns whose literal segments are missing from the path without walking the chain.
+	 * @return the fingerprint of the literal segments in the pattern, 0 if there are none
+	 */
+	public long getLiteralFingerprint() {
+		return literalFingerprint;
+	}
+
+	/**
+	 * @param captureSlot the index of a captured variable
+	 * @return the name of the variable captured in that slot
+	 */
+	public String getCapturedVariableName(int captureSlot) {
+		return capturedVariableNames[captureSlot];
+	}
+
+	/**
+	 * @param variableName the name of a captured variable
+	 * @return the capture slot for the variable or -1 if this pattern does not capture it
+	 */
+	public int getCaptureSlot(String variableName) {
+		for (int i = 0; i < capturedVariableNames.length; i++) {
+			if (capturedVariableNames[i].equals(variableName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
 	
 	public String toString() {
 		return patternString;
@@ -282,45 +633,131 @@ public class PathPattern implements Comparable<PathPattern> {
 	/**
 	 * Encapsulates context when attempting a match. Includes some fixed state like the
 	 * candidate currently being considered for a match but also some accumulators for
-	 * extracted variables.
+	 * extracted variables. A context is reset at the start of each match so a caller can
+	 * keep one (per thread, they are not thread safe) and reuse it across many patterns and
+	 * paths, avoiding allocating a new one each time.
 	 */
-	class MatchingContext {
+	public static class MatchingContext {
+
+		private static final int[] NO_CAPTURES = new int[0];
+
+		// Enough for the regex elements of a typical pattern
+		private static final int MAX_MATCHERS = 4;
 
-		// The candidate path to attempt a match against
-		char[] candidate;
+		// The candidate path to attempt a match against, characters are read from it in place
+		CharSequence candidate;
 
 		// The length of the candidate path
 		int candidateLength;
 
+		// The separator of the pattern currently being matched
+		char separator;
+
+		// If the candidate was supplied pre-tokenized using the same separator, used to find segment ends
+		TokenizedPath tokenizedPath;
+
 		boolean isMatchStartMatching = false;
 
+		// The maps and window are created when first needed, many matches never use them
 		private Map<String, String> extractedVariables;
 
-		public boolean extractingVariables;
+		boolean extractingVariables;
 
-		public MatchingContext(String path, boolean extractVariables) {
-			candidate = path.toCharArray();
-			candidateLength = candidate.length;
-			this.extractingVariables = extractVariables;
+		// Reusable window onto the candidate, used as input for regex matching
+		private SubSequence window;
+
+		// Reusable matchers for the regex patterns most recently used with this context
+		private java.util.regex.Pattern[] matcherPatterns;
+
+		private Matcher[] matchers;
+
+		private int nextMatcher;
+
+		// Reusable capture positions, the start and end of the variable in capture slot i are at 2*i and 2*i+1
+		int[] captures = NO_CAPTURES;
+
+		public MatchingContext() {
 		}
 
-		public void setMatchStartMatching(boolean b) {
-			isMatchStartMatching = b;
+		/**
+		 * Prepare the context for a new match attempt.
+		 */
+		void reset(CharSequence path, char separator, boolean matchStart, boolean extractVariables) {
+			this.candidate = path;
+			this.candidateLength = path.length();
+			this.separator = separator;
+			this.tokenizedPath = (path instanceof TokenizedPath && ((TokenizedPath) path).getSeparator() == separator
+					? (TokenizedPath) path : null);
+			this.isMatchStartMatching = matchStart;
+			this.extractingVariables = extractVariables;
+			// Dropped rather than cleared, the map from a previous match may have been returned to a caller
+			this.extractedVariables = null;
 		}
 
-		public void set(String key, String value) {
-			if (this.extractedVariables == null) {
+		void set(String key, String value) {
+			if (extractedVariables == null) {
 				extractedVariables = new LinkedHashMap<>();
 			}
 			extractedVariables.put(key, value);
 		}
 
+		/**
+		 * @return the variables extracted by the most recent match using this context
+		 */
 		public Map<String, String> getExtractedVariables() {
-			if (this.extractedVariables == null) {
-				return NO_VARIABLES;
-			} else {
-				return this.extractedVariables;
+			return (this.extractedVariables == null ? NO_VARIABLES : this.extractedVariables);
+		}
+
+		/**
+		 * @return a window onto the candidate between the specified positions. There is only one window
+		 * per context, it is repositioned on each call.
+		 */
+		CharSequence window(int start, int end) {
+			if (window == null) {
+				window = new SubSequence();
+			}
+			window.reset(candidate, start, end);
+			return window;
+		}
+
+		/**
+		 * @return a matcher for the specified pattern, reset to work on the specified input. Matchers
+		 * for the last few patterns used are kept and reused, so a long lived context does not hold
+		 * on to one for every pattern it has ever seen.
+		 */
+		Matcher matcher(java.util.regex.Pattern pattern, CharSequence input) {
+			if (matchers == null) {
+				matcherPatterns = new java.util.regex.Pattern[MAX_MATCHERS];
+				matchers = new Matcher[MAX_MATCHERS];
+			}
+			for (int i = 0; i < MAX_MATCHERS; i++) {
+				if (matcherPatterns[i] == pattern) {
+					return matchers[i].reset(input);
+				}
+			}
+			Matcher matcher = pattern.matcher(input);
+			matcherPatterns[nextMatcher] = pattern;
+			matchers[nextMatcher] = matcher;
+			nextMatcher = (nextMatcher + 1) % MAX_MATCHERS;
+			return matcher;
+		}
+
+		/**
+		 * @return an array large enough to hold the start and end positions of the specified number of captures
+		 */
+		int[] getCaptures(int captureCount) {
+			if (captures.length < captureCount * 2) {
+				captures = new int[captureCount * 2];
 			}
+			return captures;
+		}
+
+		/**
+		 * Record the position of a captured variable.
+		 */
+		void capture(int captureSlot, int start, int end) {
+			captures[captureSlot * 2] = start;
+			captures[captureSlot * 2 + 1] = end;
 		}
 
 		/**
@@ -331,20 +768,31 @@ public class PathPattern implements Comparable<PathPattern> {
 		 * @return the position of the next separator or the end of the candidate
 		 */
 		public int scanAhead(int pos) {
-			while (pos < candidateLength) {
-				if (candidate[pos] == separator) {
-					return pos;
-				}
-				pos++;
+			if (tokenizedPath != null) {
+				return tokenizedPath.nextSeparator(pos);
 			}
-			return candidateLength;
+			return SeparatorScanner.scan(candidate, separator, pos);
 		}
 
 	}
 	
 
 	/**
-	 * Combine this pattern with another. Currently does not produce a new PathPattern, just produces a new string.
+	 * Combine this pattern with another, producing a new pattern by joining their path elements rather
+	 * than by parsing. Use a {@link PatternCombiner} to remember the results of combining the same pairs.
+	 * @param pattern2 the pattern to follow this one
+	 * @return the combination of the two patterns
+	 * @throws IllegalArgumentException if the two patterns cannot be combined
+	 * @throws PatternParseException if the combination is not a valid pattern
+	 * @see #combine(String)
+	 */
+	public PathPattern combine(PathPattern pattern2) {
+		return PatternCombiner.combinePatterns(this, pattern2);
+	}
+
+	/**
+	 * Combine this pattern with another. Does not produce a new PathPattern, just produces a new string,
+	 * see {@link #combine(PathPattern)}.
 	 */
 	public String combine(String pattern2string) {
 		// If one of them is empty the result is the other. If both empty the result is ""
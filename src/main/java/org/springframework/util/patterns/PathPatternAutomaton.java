@@ -0,0 +1,621 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.springframework.util.patterns.PathPattern.MatchingContext;
+
+/**
+ * Compiles a set of {@link PathPattern} objects into a single deterministic automaton over the
+ * characters of a candidate path. Separators, literals, '?', '*' and unconstrained captures
+ * (including {*...}) of all the patterns become the states and transitions of the automaton
+ * so a candidate path is checked against the whole set in one left-to-right pass, the time taken
+ * only depending on the length of the path. Patterns that cannot be represented (those
+ * including regex path elements or constrained captures, those that are case insensitive or
+ * those using a different separator to the first pattern) fall back to being matched using
+ * their path element chain.
+ * <p>Captures in the patterns are whole segments of the path, so the pass records the
+ * positions of the separators it sees (the tags) and the variables of a matched pattern
+ * are then read directly from those positions without another pass over the path.
+ * <p>Once built the automaton is immutable and can be shared across threads.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternAutomaton {
+
+	/** If the automaton needs more states than this, all patterns fall back to chain matching */
+	static final int MAX_STATES = 20000;
+
+	private static final int DEAD_STATE = 0;
+
+	// Kinds of steps that patterns are broken down into
+	private static final byte STEP_CHAR = 0;
+	private static final byte STEP_ANY_CHAR = 1;
+	private static final byte STEP_SEGMENT = 2;
+	private static final byte STEP_REST = 3;
+	// The '?' and '*' of a glob, like STEP_ANY_CHAR and STEP_SEGMENT but never matching a separator or line terminator
+	private static final byte STEP_GLOB_CHAR = 4;
+	private static final byte STEP_GLOB_SEGMENT = 5;
+
+	// Given their own character classes when there are globs, as glob wildcards do not match them
+	private static final char[] LINE_TERMINATORS = { '\n', '\r', '\u0085', '\u2028', '\u2029' };
+
+	private final List<PathPattern> patterns;
+
+	// The separator the automaton is built for
+	private final char separator;
+
+	// Automaton details for each pattern, null for those matched via their chain
+	private final PatternSteps[] patternSteps;
+
+	// Indexes of patterns that are matched using their chain
+	private final int[] fallbackPatterns;
+
+	// Equivalence class of each ascii character, class 0 is 'any char not used in a pattern'
+	private final int[] asciiClasses = new int[128];
+
+	// Sorted non ascii characters used in patterns and their classes
+	private char[] nonAsciiChars;
+
+	private int[] nonAsciiClasses;
+
+	private int classCount;
+
+	private int startState;
+
+	// next[state * classCount + class] is the state reached on consuming a char of that class
+	private int[] transitions;
+
+	// The (ascending) indexes of the patterns accepted in each state
+	private int[][] acceptedPatterns;
+
+	/**
+	 * Build an automaton for the supplied patterns.
+	 *
+	 * @param patterns the patterns, as produced by {@link PathPatternParser#parse(String)}
+	 */
+	public PathPatternAutomaton(Collection<PathPattern> patterns) {
+		this.patterns = new ArrayList<>(patterns);
+		this.separator = (this.patterns.isEmpty() ? PathPatternParser.DEFAULT_SEPARATOR : this.patterns.get(0).getSeparator());
+		this.patternSteps = new PatternSteps[this.patterns.size()];
+		List<Integer> fallbacks = new ArrayList<>();
+		for (int i = 0; i < this.patterns.size(); i++) {
+			patternSteps[i] = PatternSteps.from(this.patterns.get(i), separator);
+			if (patternSteps[i] == null) {
+				fallbacks.add(i);
+			}
+		}
+		if (!buildAutomaton()) {
+			Arrays.fill(patternSteps, null);
+			fallbacks.clear();
+			for (int i = 0; i < this.patterns.size(); i++) {
+				fallbacks.add(i);
+			}
+			buildAutomaton();
+		}
+		this.fallbackPatterns = new int[fallbacks.size()];
+		for (int i = 0; i < fallbackPatterns.length; i++) {
+			fallbackPatterns[i] = fallbacks.get(i);
+		}
+	}
+
+	/**
+	 * @return the number of states in the automaton, including the dead state
+	 */
+	public int getStateCount() {
+		return acceptedPatterns.length;
+	}
+
+	/**
+	 * @return the number of patterns that are not represented in the automaton and are matched using their chain
+	 */
+	public int getFallbackCount() {
+		return fallbackPatterns.length;
+	}
+
+	/**
+	 * @param path the candidate path
+	 * @return the patterns matching the path, in the order they were supplied to the automaton
+	 */
+	public List<PathPattern> findMatches(CharSequence path) {
+		return match(path).getMatchingPatterns();
+	}
+
+	/**
+	 * Run the automaton over the candidate path.
+	 *
+	 * @param path the candidate path
+	 * @return the result of the match, from which the matching patterns and their variables can be retrieved
+	 */
+	public MatchResult match(CharSequence path) {
+		int pathLength = path.length();
+		int[] separatorPositions = new int[8];
+		int separatorCount = 0;
+		int state = startState;
+		for (int i = 0; i < pathLength; i++) {
+			char ch = path.charAt(i);
+			if (ch == separator) {
+				if (separatorCount == separatorPositions.length) {
+					separatorPositions = Arrays.copyOf(separatorPositions, separatorCount * 2);
+				}
+				separatorPositions[separatorCount++] = i;
+			}
+			state = transitions[state * classCount + classOf(ch)];
+			if (state == DEAD_STATE) {
+				break;
+			}
+		}
+		int[] accepted = acceptedPatterns[state];
+		int[] matchIndexes;
+		int matchCount;
+		if (fallbackPatterns.length == 0) {
+			// Never modified, so the accepted indexes can be shared
+			matchIndexes = accepted;
+			matchCount = accepted.length;
+		} else {
+			// Merge the accepted and fallback matches, keeping them in the original order
+			matchIndexes = new int[accepted.length + fallbackPatterns.length];
+			matchCount = 0;
+			MatchingContext matchingContext = new MatchingContext();
+			// Share one scan for separators across all the fallback patterns
+			CharSequence tokenizedPath = (path instanceof TokenizedPath ? path : new TokenizedPath(path, separator));
+			int a = 0;
+			for (int patternIndex : fallbackPatterns) {
+				while (a < accepted.length && accepted[a] < patternIndex) {
+					matchIndexes[matchCount++] = accepted[a++];
+				}
+				if (patterns.get(patternIndex).matches(tokenizedPath, matchingContext)) {
+					matchIndexes[matchCount++] = patternIndex;
+				}
+			}
+			while (a < accepted.length) {
+				matchIndexes[matchCount++] = accepted[a++];
+			}
+		}
+		List<PathPattern> matches;
+		if (matchCount == 0) {
+			matches = Collections.emptyList();
+		} else {
+			matches = new ArrayList<>(matchCount);
+			for (int i = 0; i < matchCount; i++) {
+				matches.add(patterns.get(matchIndexes[i]));
+			}
+		}
+		return new MatchResult(path, matches, matchIndexes, separatorPositions, separatorCount);
+	}
+
+	private int classOf(char ch) {
+		if (ch < 128) {
+			return asciiClasses[ch];
+		}
+		int idx = Arrays.binarySearch(nonAsciiChars, ch);
+		return (idx < 0 ? 0 : nonAsciiClasses[idx]);
+	}
+
+	/**
+	 * Use subset construction to build the deterministic automaton from the steps of the patterns.
+	 *
+	 * @return false if the automaton would be too large
+	 */
+	private boolean buildAutomaton() {
+		// Each step position of each pattern (plus a final 'matched' position) is a state
+		// of the non-deterministic automaton
+		int[] firstState = new int[patternSteps.length + 1];
+		TreeSet<Character> alphabet = new TreeSet<>();
+		alphabet.add(separator);
+		for (int p = 0; p < patternSteps.length; p++) {
+			PatternSteps steps = patternSteps[p];
+			firstState[p + 1] = firstState[p] + (steps == null ? 0 : steps.kinds.length + 1);
+			if (steps != null) {
+				for (int s = 0; s < steps.kinds.length; s++) {
+					if (steps.kinds[s] == STEP_CHAR) {
+						alphabet.add(steps.chars[s]);
+					} else if (steps.kinds[s] == STEP_GLOB_CHAR || steps.kinds[s] == STEP_GLOB_SEGMENT) {
+						for (char lineTerminator : LINE_TERMINATORS) {
+							alphabet.add(lineTerminator);
+						}
+					}
+				}
+			}
+		}
+		int nfaStateCount = firstState[patternSteps.length];
+		byte[] nfaKinds = new byte[nfaStateCount];
+		char[] nfaChars = new char[nfaStateCount];
+		int[] nfaPattern = new int[nfaStateCount];
+		boolean[] nfaFinal = new boolean[nfaStateCount];
+		for (int p = 0; p < patternSteps.length; p++) {
+			PatternSteps steps = patternSteps[p];
+			if (steps != null) {
+				int base = firstState[p];
+				for (int s = 0; s <= steps.kinds.length; s++) {
+					nfaPattern[base + s] = p;
+					if (s == steps.kinds.length) {
+						nfaFinal[base + s] = true;
+					} else {
+						nfaKinds[base + s] = steps.kinds[s];
+						nfaChars[base + s] = steps.chars[s];
+					}
+				}
+			}
+		}
+
+		// Assign character classes, class 0 is every character not mentioned in a pattern
+		Arrays.fill(asciiClasses, 0);
+		classCount = alphabet.size() + 1;
+		char[] classChars = new char[classCount];
+		List<Character> nonAscii = new ArrayList<>();
+		int nextClass = 1;
+		for (char ch : alphabet) {
+			classChars[nextClass] = ch;
+			if (ch < 128) {
+				asciiClasses[ch] = nextClass;
+			} else {
+				nonAscii.add(ch);
+			}
+			nextClass++;
+		}
+		nonAsciiChars = new char[nonAscii.size()];
+		nonAsciiClasses = new int[nonAscii.size()];
+		for (int i = 0; i < nonAsciiChars.length; i++) {
+			nonAsciiChars[i] = nonAscii.get(i);
+			nonAsciiClasses[i] = classOf(nonAsciiChars[i], alphabet);
+		}
+
+		// Subset construction
+		Map<StateSet, Integer> dfaStates = new HashMap<>();
+		List<StateSet> worklist = new ArrayList<>();
+		StateSet dead = new StateSet(new int[0]);
+		dfaStates.put(dead, DEAD_STATE);
+		worklist.add(dead);
+		int[] initial = new int[patternSteps.length];
+		int initialCount = 0;
+		for (int p = 0; p < patternSteps.length; p++) {
+			if (patternSteps[p] != null) {
+				initial[initialCount++] = firstState[p];
+			}
+		}
+		StateSet start = closure(Arrays.copyOf(initial, initialCount), nfaKinds, nfaFinal);
+		startState = addState(start, dfaStates, worklist);
+		List<int[]> rows = new ArrayList<>();
+		boolean[] seen = new boolean[nfaStateCount];
+		int[] targets = new int[nfaStateCount];
+		for (int d = 0; d < worklist.size(); d++) {
+			if (worklist.size() > MAX_STATES) {
+				return false;
+			}
+			StateSet current = worklist.get(d);
+			int[] row = new int[classCount];
+			for (int c = 0; c < classCount; c++) {
+				char ch = classChars[c];
+				int targetCount = 0;
+				for (int nfaState : current.states) {
+					if (nfaFinal[nfaState]) {
+						continue;
+					}
+					int target = -1;
+					switch (nfaKinds[nfaState]) {
+						case STEP_CHAR:
+							if (c != 0 && nfaChars[nfaState] == ch) {
+								target = nfaState + 1;
+							}
+							break;
+						case STEP_ANY_CHAR:
+							target = nfaState + 1;
+							break;
+						case STEP_GLOB_CHAR:
+							if (c == 0 || (ch != separator && !GlobPathElement.isLineTerminator(ch))) {
+								target = nfaState + 1;
+							}
+							break;
+						case STEP_GLOB_SEGMENT:
+							if (c == 0 || (ch != separator && !GlobPathElement.isLineTerminator(ch))) {
+								target = nfaState;
+							}
+							break;
+						case STEP_SEGMENT:
+							if (c == 0 || ch != separator) {
+								target = nfaState;
+							}
+							break;
+						case STEP_REST:
+							target = nfaState;
+							break;
+					}
+					if (target != -1 && !seen[target]) {
+						seen[target] = true;
+						targets[targetCount++] = target;
+					}
+				}
+				for (int i = 0; i < targetCount; i++) {
+					seen[targets[i]] = false;
+				}
+				row[c] = addState(closure(Arrays.copyOf(targets, targetCount), nfaKinds, nfaFinal), dfaStates, worklist);
+			}
+			rows.add(row);
+		}
+		transitions = new int[worklist.size() * classCount];
+		acceptedPatterns = new int[worklist.size()][];
+		for (int d = 0; d < worklist.size(); d++) {
+			System.arraycopy(rows.get(d), 0, transitions, d * classCount, classCount);
+			int[] states = worklist.get(d).states;
+			int acceptedCount = 0;
+			int[] accepted = new int[states.length];
+			for (int nfaState : states) {
+				if (nfaFinal[nfaState]) {
+					accepted[acceptedCount++] = nfaPattern[nfaState];
+				}
+			}
+			acceptedPatterns[d] = Arrays.copyOf(accepted, acceptedCount);
+			Arrays.sort(acceptedPatterns[d]);
+		}
+		return true;
+	}
+
+	private int classOf(char ch, TreeSet<Character> alphabet) {
+		return alphabet.headSet(ch).size() + 1;
+	}
+
+	private int addState(StateSet stateSet, Map<StateSet, Integer> dfaStates, List<StateSet> worklist) {
+		Integer existing = dfaStates.get(stateSet);
+		if (existing != null) {
+			return existing;
+		}
+		int newState = worklist.size();
+		dfaStates.put(stateSet, newState);
+		worklist.add(stateSet);
+		return newState;
+	}
+
+	/**
+	 * Segment and rest steps may match nothing, so also include the state following them.
+	 */
+	private StateSet closure(int[] states, byte[] nfaKinds, boolean[] nfaFinal) {
+		TreeSet<Integer> closure = new TreeSet<>();
+		for (int state : states) {
+			closure.add(state);
+			while (!nfaFinal[state] && (nfaKinds[state] == STEP_SEGMENT || nfaKinds[state] == STEP_GLOB_SEGMENT
+					|| nfaKinds[state] == STEP_REST)) {
+				state++;
+				closure.add(state);
+			}
+		}
+		int[] result = new int[closure.size()];
+		int i = 0;
+		for (Integer state : closure) {
+			result[i++] = state;
+		}
+		return new StateSet(result);
+	}
+
+	/**
+	 * A set of states of the non-deterministic automaton, a state of the deterministic one.
+	 */
+	private static class StateSet {
+
+		final int[] states;
+
+		private final int hash;
+
+		StateSet(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof StateSet && Arrays.equals(states, ((StateSet) o).states));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	/**
+	 * A pattern broken down into the steps of the automaton, with the information needed to
+	 * recover its captured variables from the separator positions.
+	 */
+	private static class PatternSteps {
+
+		final byte[] kinds;
+
+		final char[] chars;
+
+		// Names of the captured variables in chain order
+		final String[] variableNames;
+
+		// For each capture, how many separators precede it in the pattern
+		final int[] variableSegments;
+
+		// For each capture, does it capture the rest of the path
+		final boolean[] capturesRest;
+
+		// Can variables be read from separator positions? Not if a '?' might consume a separator before a capture
+		final boolean separatorsLocateVariables;
+
+		private PatternSteps(byte[] kinds, char[] chars, List<String> variableNames, List<Integer> variableSegments,
+				List<Boolean> capturesRest, boolean separatorsLocateVariables) {
+			this.kinds = kinds;
+			this.chars = chars;
+			this.variableNames = variableNames.toArray(new String[variableNames.size()]);
+			this.variableSegments = new int[variableSegments.size()];
+			this.capturesRest = new boolean[capturesRest.size()];
+			for (int i = 0; i < this.variableSegments.length; i++) {
+				this.variableSegments[i] = variableSegments.get(i);
+				this.capturesRest[i] = capturesRest.get(i);
+			}
+			this.separatorsLocateVariables = separatorsLocateVariables;
+		}
+
+		/**
+		 * @return the steps for the pattern or null if it cannot be represented in the automaton
+		 */
+		static PatternSteps from(PathPattern pathPattern, char separator) {
+			if (!pathPattern.isCaseSensitive() || pathPattern.getSeparator() != separator) {
+				return null;
+			}
+			StringBuilder chars = new StringBuilder();
+			StringBuilder kinds = new StringBuilder();
+			List<String> variableNames = new ArrayList<>();
+			List<Integer> variableSegments = new ArrayList<>();
+			List<Boolean> capturesRest = new ArrayList<>();
+			int separatorCount = 0;
+			boolean anyCharSeen = false;
+			boolean separatorsLocateVariables = true;
+			PathElement pe = pathPattern.getHeadSection();
+			while (pe != null) {
+				if (pe instanceof SeparatorPathElement) {
+					kinds.append((char) STEP_CHAR);
+					chars.append(separator);
+					separatorCount++;
+				} else if (pe instanceof LiteralPathElement) {
+					String text = pe.getText();
+					for (int i = 0; i < text.length(); i++) {
+						kinds.append((char) STEP_CHAR);
+						chars.append(text.charAt(i));
+					}
+				} else if (pe instanceof SingleCharWildcardedPathElement) {
+					String text = pe.getText();
+					for (int i = 0; i < text.length(); i++) {
+						char ch = text.charAt(i);
+						kinds.append((char) (ch == '?' ? STEP_ANY_CHAR : STEP_CHAR));
+						chars.append(ch);
+						anyCharSeen |= (ch == '?');
+					}
+				} else if (pe instanceof WildcardPathElement) {
+					kinds.append((char) STEP_SEGMENT);
+					chars.append('*');
+				} else if (pe instanceof GlobPathElement) {
+					// Unlike a single char wildcarded element, the wildcards in a glob stay within the segment and
+					// do not match line terminators
+					String text = pe.getText();
+					for (int i = 0; i < text.length(); i++) {
+						char ch = text.charAt(i);
+						kinds.append((char) (ch == '*' ? STEP_GLOB_SEGMENT : (ch == '?' ? STEP_GLOB_CHAR : STEP_CHAR)));
+						chars.append(ch);
+					}
+				} else if (pe instanceof CaptureVariablePathElement && !((CaptureVariablePathElement) pe).isConstrained()) {
+					kinds.append((char) STEP_SEGMENT);
+					chars.append('*');
+					variableNames.add(((CaptureVariablePathElement) pe).getVariableName());
+					variableSegments.add(separatorCount);
+					capturesRest.add(false);
+					separatorsLocateVariables &= !anyCharSeen;
+				} else if (pe instanceof CaptureTheRestPathElement) {
+					kinds.append((char) STEP_REST);
+					chars.append('*');
+					variableNames.add(((CaptureTheRestPathElement) pe).getVariableName());
+					variableSegments.add(separatorCount);
+					capturesRest.add(true);
+					separatorsLocateVariables &= !anyCharSeen;
+				} else {
+					return null;
+				}
+				pe = pe.next;
+			}
+			byte[] kindBytes = new byte[kinds.length()];
+			for (int i = 0; i < kindBytes.length; i++) {
+				kindBytes[i] = (byte) kinds.charAt(i);
+			}
+			return new PatternSteps(kindBytes, chars.toString().toCharArray(), variableNames, variableSegments,
+					capturesRest, separatorsLocateVariables);
+		}
+	}
+
+	/**
+	 * The result of running the automaton over a candidate path.
+	 */
+	public class MatchResult {
+
+		private final CharSequence path;
+
+		private final List<PathPattern> matchingPatterns;
+
+		// The index of each matching pattern in the patterns of the automaton
+		private final int[] patternIndexes;
+
+		private final int[] separatorPositions;
+
+		private final int separatorCount;
+
+		MatchResult(CharSequence path, List<PathPattern> matchingPatterns, int[] patternIndexes,
+				int[] separatorPositions, int separatorCount) {
+			this.path = path;
+			this.matchingPatterns = matchingPatterns;
+			this.patternIndexes = patternIndexes;
+			this.separatorPositions = separatorPositions;
+			this.separatorCount = separatorCount;
+		}
+
+		/**
+		 * @return the patterns matching the path, in the order they were supplied to the automaton
+		 */
+		public List<PathPattern> getMatchingPatterns() {
+			return matchingPatterns;
+		}
+
+		/**
+		 * Retrieve the variables captured by one of the matching patterns.
+		 *
+		 * @param pathPattern one of the patterns returned by {@link #getMatchingPatterns()}
+		 * @return a map of extracted variables - an empty map if no variables extracted
+		 */
+		public Map<String, String> getExtractedVariables(PathPattern pathPattern) {
+			for (int i = 0; i < matchingPatterns.size(); i++) {
+				if (matchingPatterns.get(i) == pathPattern) {
+					return getExtractedVariables(i);
+				}
+			}
+			return pathPattern.matchAndExtract(path);
+		}
+
+		/**
+		 * Retrieve the variables captured by one of the matching patterns.
+		 *
+		 * @param matchIndex the position of the pattern in {@link #getMatchingPatterns()}
+		 * @return a map of extracted variables - an empty map if no variables extracted
+		 */
+		public Map<String, String> getExtractedVariables(int matchIndex) {
+			PathPattern pathPattern = matchingPatterns.get(matchIndex);
+			PatternSteps steps = patternSteps[patternIndexes[matchIndex]];
+			if (steps == null || !steps.separatorsLocateVariables) {
+				return pathPattern.matchAndExtract(path);
+			}
+			if (steps.variableNames.length == 0) {
+				return Collections.emptyMap();
+			}
+			Map<String, String> variables = new LinkedHashMap<>();
+			for (int i = 0; i < steps.variableNames.length; i++) {
+				int segment = steps.variableSegments[i];
+				int start = (segment == 0 ? 0 : separatorPositions[segment - 1] + 1);
+				int end = (steps.capturesRest[i] || segment >= separatorCount ? path.length() : separatorPositions[segment]);
+				variables.put(steps.variableNames[i], path.subSequence(start, end).toString());
+			}
+			return variables;
+		}
+	}
+
+}
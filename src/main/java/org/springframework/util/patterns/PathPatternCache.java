@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+/**
+ * A cache of parsed {@link PathPattern} objects, keyed by the pattern text, separator and case
+ * sensitivity. Parsing a pattern (which can include compiling regexes for constraints and
+ * wildcarded segments) is much more expensive than looking it up, so code that repeatedly needs a
+ * PathPattern for the same text can obtain it from here. A PathPattern is not modified by
+ * matching so the same instance can be shared by all callers. The cache has a maximum size,
+ * when it is full the least recently used pattern is evicted. It is safe to use from multiple
+ * threads.
+ * <pre class="code">
+ * private static final PathPatternCache patterns = new PathPatternCache(1024);
+ * ...
+ * if (patterns.parse(configuredPattern).matches(path)) {
+ * </pre>
+ * Patterns that fail to parse are not cached, the {@link PatternParseException} is thrown to
+ * each caller.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternCache {
+
+	private final ConcurrentLruCache<PatternKey, PathPattern> cache;
+
+	/**
+	 * @param sizeLimit the maximum number of patterns to keep
+	 */
+	public PathPatternCache(int sizeLimit) {
+		this.cache = new ConcurrentLruCache<>(sizeLimit, PathPatternCache::parse);
+	}
+
+	/**
+	 * Obtain the case sensitive pattern for some text that uses the default separator.
+	 * @param pathPattern the pattern text, e.g. /foo/{bar}
+	 * @return the parsed pattern
+	 * @throws PatternParseException if the pattern cannot be parsed
+	 */
+	public PathPattern parse(String pathPattern) {
+		return parse(pathPattern, PathPatternParser.DEFAULT_SEPARATOR, true);
+	}
+
+	/**
+	 * @param pathPattern the pattern text, e.g. /foo/{bar}
+	 * @param separator the separator between the segments of the pattern
+	 * @param caseSensitive whether the pattern should match candidates case sensitively
+	 * @return the parsed pattern
+	 * @throws PatternParseException if the pattern cannot be parsed
+	 */
+	public PathPattern parse(String pathPattern, char separator, boolean caseSensitive) {
+		return cache.get(new PatternKey(pathPattern, separator, caseSensitive));
+	}
+
+	/**
+	 * @return the number of patterns currently in the cache
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * @return the maximum number of patterns the cache will hold
+	 */
+	public int getSizeLimit() {
+		return cache.sizeLimit();
+	}
+
+	/**
+	 * @return how many lookups found the pattern already parsed
+	 */
+	public long getHitCount() {
+		return cache.hitCount();
+	}
+
+	/**
+	 * @return how many lookups had to parse the pattern (including those that failed to parse)
+	 */
+	public long getMissCount() {
+		return cache.missCount();
+	}
+
+	/**
+	 * @return how many patterns have been evicted to make room for others
+	 */
+	public long getEvictionCount() {
+		return cache.evictionCount();
+	}
+
+	/**
+	 * Discard all the cached patterns, the statistics are not reset.
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	public String toString() {
+		return "PathPatternCache(size=" + size() + "/" + getSizeLimit() + ",hits=" + getHitCount() + ",misses="
+				+ getMissCount() + ",evictions=" + getEvictionCount() + ")";
+	}
+
+	private static PathPattern parse(PatternKey key) {
+		// The configuration of the parser comes from the key
+		PathPatternParser parser = new PathPatternParser(key.separator);
+		parser.setCaseSensitive(key.caseSensitive);
+		return parser.parse(key.pathPattern);
+	}
+
+	private static final class PatternKey {
+
+		final String pathPattern;
+
+		final char separator;
+
+		final boolean caseSensitive;
+
+		PatternKey(String pathPattern, char separator, boolean caseSensitive) {
+			this.pathPattern = pathPattern;
+			this.separator = separator;
+			this.caseSensitive = caseSensitive;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PatternKey)) {
+				return false;
+			}
+			PatternKey key = (PatternKey) o;
+			return pathPattern.equals(key.pathPattern) && separator == key.separator
+					&& caseSensitive == key.caseSensitive;
+		}
+
+		@Override
+		public int hashCode() {
+			return (pathPattern.hashCode() * 17 + separator) * 17 + (caseSensitive ? 1 : 0);
+		}
+
+	}
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.asm.ClassWriter;
+import org.springframework.asm.Label;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+
+/**
+ * Generates a class for a parsed {@link PathPattern} that performs the work of the whole chain
+ * of path elements in a single method. Literal text becomes a sequence of char comparisons,
+ * separator scans and variable captures are inlined. The result is one monomorphic method per
+ * pattern rather than a chain of virtual calls through the different path element types.
+ * Patterns including regex or glob path elements are not compiled and continue to use their chain.
+ * Enabled via {@link PathPatternParser#setCompileMatchers(boolean)}.
+ *
+ * @author Andy Clement
+ */
+class PathPatternCompiler implements Opcodes {
+
+	private static final String BASE_CLASS = "org/springframework/util/patterns/CompiledPathMatcher";
+
+	private static final String MATCHES_DESCRIPTOR = "(Ljava/lang/CharSequence;Z[I)Z";
+
+	private static final AtomicInteger suffixId = new AtomicInteger(1);
+
+	// Local variable slots in the generated matches method
+	private static final int PATH = 1;
+	private static final int MATCH_START = 2;
+	private static final int CAPTURES = 3;
+	private static final int LENGTH = 4;
+	private static final int POS = 5;
+	private static final int START = 6;
+	// Deferred constraint checks keep the start and end of their capture in pairs of slots from here
+	private static final int FIRST_DEFERRED = 7;
+
+	/**
+	 * Generate a matcher for the specified pattern.
+	 *
+	 * @param pathPattern the pattern to compile
+	 * @return the generated matcher or null if the pattern cannot be compiled
+	 */
+	static CompiledPathMatcher compile(PathPattern pathPattern) {
+		PathElement head = pathPattern.getHeadSection();
+		List<Object> constraints = new ArrayList<>();
+		for (PathElement pe = head; pe != null; pe = pe.next) {
+			if (pe instanceof RegexPathElement || pe instanceof GlobPathElement) {
+				return null;
+			} else if (pe instanceof CaptureVariablePathElement) {
+				CaptureVariablePathElement cvpe = (CaptureVariablePathElement) pe;
+				if (cvpe.isConstrained()) {
+					constraints.add(cvpe.getConstraint());
+				}
+			}
+		}
+		if (head == null) {
+			return null;
+		}
+		String className = "org/springframework/util/patterns/generated/PathMatcher" + suffixId.getAndIncrement();
+		byte[] bytes;
+		try {
+			bytes = generate(className, head, pathPattern.getSeparator(), pathPattern.isCaseSensitive());
+		} catch (RuntimeException re) {
+			// e.g. the method is too large, stick with the chain
+			return null;
+		}
+		try {
+			Class<?> clazz = new ChildClassLoader(PathPatternCompiler.class.getClassLoader())
+					.defineClass(className.replace('/', '.'), bytes);
+			return (CompiledPathMatcher) clazz
+					.getConstructor(Object[].class)
+					.newInstance((Object) constraints.toArray());
+		} catch (Exception ex) {
+			throw new IllegalStateException("Failed to generate matcher for pattern '" + pathPattern.getPatternString() + "'", ex);
+		}
+	}
+
+	private static byte[] generate(String className, PathElement head, char separator, boolean caseSensitive) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+			@Override
+			protected String getCommonSuperClass(String type1, String type2) {
+				return "java/lang/Object";
+			}
+		};
+		cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, BASE_CLASS, null);
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitMethodInsn(INVOKESPECIAL, BASE_CLASS, "<init>", "([Ljava/lang/Object;)V", false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(ACC_PUBLIC, "matches", MATCHES_DESCRIPTOR, null, null);
+		mv.visitCode();
+		Label fail = new Label();
+		mv.visitVarInsn(ALOAD, PATH);
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/lang/CharSequence", "length", "()I", true);
+		mv.visitVarInsn(ISTORE, LENGTH);
+		mv.visitInsn(ICONST_0);
+		mv.visitVarInsn(ISTORE, POS);
+		int captureIndex = 0;
+		int constraintIndex = 0;
+		// Constraints awaiting a check before the method returns true, as {constraint index, start slot}
+		List<int[]> deferredConstraints = new ArrayList<>();
+		for (PathElement pe = head; pe != null; pe = pe.next) {
+			if (pe instanceof SeparatorPathElement) {
+				// if (pos >= length || path.charAt(pos) != separator) return false; pos++;
+				mv.visitVarInsn(ILOAD, POS);
+				mv.visitVarInsn(ILOAD, LENGTH);
+				mv.visitJumpInsn(IF_ICMPGE, fail);
+				insertCharAt(mv, 0, false);
+				insertInt(mv, separator);
+				mv.visitJumpInsn(IF_ICMPNE, fail);
+				mv.visitIincInsn(POS, 1);
+			} else if (pe instanceof LiteralPathElement || pe instanceof SingleCharWildcardedPathElement) {
+				// if (pos + len > length) return false; then compare each char (skipping '?')
+				String text = pe.getText();
+				boolean singleCharWildcards = (pe instanceof SingleCharWildcardedPathElement);
+				mv.visitVarInsn(ILOAD, POS);
+				insertInt(mv, text.length());
+				mv.visitInsn(IADD);
+				mv.visitVarInsn(ILOAD, LENGTH);
+				mv.visitJumpInsn(IF_ICMPGT, fail);
+				for (int i = 0; i < text.length(); i++) {
+					char ch = text.charAt(i);
+					if (singleCharWildcards && ch == '?') {
+						continue;
+					}
+					insertCharAt(mv, i, !caseSensitive);
+					insertInt(mv, ch);
+					mv.visitJumpInsn(IF_ICMPNE, fail);
+				}
+				mv.visitIincInsn(POS, text.length());
+			} else if (pe instanceof WildcardPathElement) {
+				insertScanAhead(mv, separator);
+			} else if (pe instanceof CaptureVariablePathElement) {
+				mv.visitVarInsn(ILOAD, POS);
+				mv.visitVarInsn(ISTORE, START);
+				insertScanAhead(mv, separator);
+				CaptureVariablePathElement cvpe = (CaptureVariablePathElement) pe;
+				if (cvpe.isConstrained() && cvpe.isConstraintDeferred()) {
+					int slot = FIRST_DEFERRED + deferredConstraints.size() * 2;
+					mv.visitVarInsn(ILOAD, START);
+					mv.visitVarInsn(ISTORE, slot);
+					mv.visitVarInsn(ILOAD, POS);
+					mv.visitVarInsn(ISTORE, slot + 1);
+					deferredConstraints.add(new int[] { constraintIndex++, slot });
+				} else if (cvpe.isConstrained()) {
+					insertCheckConstraint(mv, constraintIndex++, START, POS, fail);
+				}
+				insertRecordCapture(mv, captureIndex++, START, POS);
+			} else if (pe instanceof CaptureTheRestPathElement) {
+				// Captures everything remaining and cannot be followed by anything else
+				insertRecordCapture(mv, captureIndex++, POS, LENGTH);
+				insertReturnTrue(mv, deferredConstraints, fail);
+				break;
+			} else {
+				throw new IllegalStateException("Unable to compile path element " + pe);
+			}
+			if (pe.next == null) {
+				// return pos == length;
+				mv.visitVarInsn(ILOAD, POS);
+				mv.visitVarInsn(ILOAD, LENGTH);
+				mv.visitJumpInsn(IF_ICMPNE, fail);
+				insertReturnTrue(mv, deferredConstraints, fail);
+			} else {
+				// if (matchStart && pos == length) return true; - no more data but matches up to this point
+				Label carryOn = new Label();
+				mv.visitVarInsn(ILOAD, MATCH_START);
+				mv.visitJumpInsn(IFEQ, carryOn);
+				mv.visitVarInsn(ILOAD, POS);
+				mv.visitVarInsn(ILOAD, LENGTH);
+				mv.visitJumpInsn(IF_ICMPNE, carryOn);
+				insertReturnTrue(mv, deferredConstraints, fail);
+				mv.visitLabel(carryOn);
+			}
+		}
+		mv.visitLabel(fail);
+		mv.visitInsn(ICONST_0);
+		mv.visitInsn(IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	/**
+	 * if (!checkConstraint(index, path, start, end)) return false;
+	 */
+	private static void insertCheckConstraint(MethodVisitor mv, int index, int startSlot, int endSlot, Label fail) {
+		mv.visitVarInsn(ALOAD, 0);
+		insertInt(mv, index);
+		mv.visitVarInsn(ALOAD, PATH);
+		mv.visitVarInsn(ILOAD, startSlot);
+		mv.visitVarInsn(ILOAD, endSlot);
+		mv.visitMethodInsn(INVOKEVIRTUAL, BASE_CLASS, "checkConstraint", "(ILjava/lang/CharSequence;II)Z", false);
+		mv.visitJumpInsn(IFEQ, fail);
+	}
+
+	/**
+	 * Check any deferred constraints then return true.
+	 */
+	private static void insertReturnTrue(MethodVisitor mv, List<int[]> deferredConstraints, Label fail) {
+		for (int[] deferred : deferredConstraints) {
+			insertCheckConstraint(mv, deferred[0], deferred[1], deferred[1] + 1, fail);
+		}
+		mv.visitInsn(ICONST_1);
+		mv.visitInsn(IRETURN);
+	}
+
+	/**
+	 * Push path.charAt(pos + offset), optionally lower cased, onto the stack.
+	 */
+	private static void insertCharAt(MethodVisitor mv, int offset, boolean toLowerCase) {
+		mv.visitVarInsn(ALOAD, PATH);
+		mv.visitVarInsn(ILOAD, POS);
+		if (offset != 0) {
+			insertInt(mv, offset);
+			mv.visitInsn(IADD);
+		}
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/lang/CharSequence", "charAt", "(I)C", true);
+		if (toLowerCase) {
+			mv.visitMethodInsn(INVOKESTATIC, BASE_CLASS, "toLowerCase", "(C)C", false);
+		}
+	}
+
+	/**
+	 * pos = scanAhead(path, separator, pos);
+	 */
+	private static void insertScanAhead(MethodVisitor mv, char separator) {
+		mv.visitVarInsn(ALOAD, PATH);
+		insertInt(mv, separator);
+		mv.visitVarInsn(ILOAD, POS);
+		mv.visitMethodInsn(INVOKESTATIC, BASE_CLASS, "scanAhead", "(Ljava/lang/CharSequence;CI)I", false);
+		mv.visitVarInsn(ISTORE, POS);
+	}
+
+	/**
+	 * if (captures != null) { captures[2*index] = start; captures[2*index+1] = end; }
+	 */
+	private static void insertRecordCapture(MethodVisitor mv, int index, int startSlot, int endSlot) {
+		Label skip = new Label();
+		mv.visitVarInsn(ALOAD, CAPTURES);
+		mv.visitJumpInsn(IFNULL, skip);
+		mv.visitVarInsn(ALOAD, CAPTURES);
+		insertInt(mv, index * 2);
+		mv.visitVarInsn(ILOAD, startSlot);
+		mv.visitInsn(IASTORE);
+		mv.visitVarInsn(ALOAD, CAPTURES);
+		insertInt(mv, index * 2 + 1);
+		mv.visitVarInsn(ILOAD, endSlot);
+		mv.visitInsn(IASTORE);
+		mv.visitLabel(skip);
+	}
+
+	private static void insertInt(MethodVisitor mv, int value) {
+		if (value >= -1 && value <= 5) {
+			mv.visitInsn(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			mv.visitIntInsn(BIPUSH, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			mv.visitIntInsn(SIPUSH, value);
+		} else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	/**
+	 * Loader for a generated matcher class. Each matcher gets its own so that it can be
+	 * collected along with the pattern it was generated for.
+	 */
+	private static class ChildClassLoader extends ClassLoader {
+
+		ChildClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> defineClass(String name, byte[] bytes) {
+			return super.defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+}
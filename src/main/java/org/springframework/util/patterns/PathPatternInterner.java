@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Shares immutable pieces of parsed patterns between all the patterns parsed by a
+ * {@link PathPatternParser} that has interning enabled. In a large set of patterns the same
+ * literal segments (api, v1, users...) and the same constraints (\d+) occur over and over, with
+ * interning they are held once: identical literal text shares one char array, identical regexes
+ * share one compiled {@link Pattern} and a pattern parsed more than once is only parsed the first
+ * time. Everything shared is never modified after it is created so can be used by any number of
+ * patterns and threads. The {@link #NONE} interner shares nothing.
+ *
+ * @author Andy Clement
+ */
+class PathPatternInterner {
+
+	/**
+	 * An interner that does no interning, used when the parser does not have interning enabled.
+	 */
+	static final PathPatternInterner NONE = new PathPatternInterner() {
+
+		@Override
+		char[] intern(char[] text) {
+			return text;
+		}
+
+		@Override
+		Pattern compile(String regex, boolean caseSensitive) {
+			return compileRegex(regex, caseSensitive);
+		}
+
+		@Override
+		PathPattern getPathPattern(String key) {
+			return null;
+		}
+
+		@Override
+		PathPattern intern(String key, PathPattern pathPattern) {
+			return pathPattern;
+		}
+
+	};
+
+	// The key wraps the same array as the value, so each distinct text is held once
+	private final ConcurrentHashMap<Text, char[]> texts = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Pattern> caseSensitiveRegexes = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Pattern> caseInsensitiveRegexes = new ConcurrentHashMap<>();
+
+	// Keys include the parser configuration as well as the pattern text
+	private final ConcurrentHashMap<String, PathPattern> pathPatterns = new ConcurrentHashMap<>();
+
+	/**
+	 * @param text some text from a pattern, that will not be modified
+	 * @return a char array with the same content, shared by all users of the same text
+	 */
+	char[] intern(char[] text) {
+		char[] existing = texts.putIfAbsent(new Text(text), text);
+		return (existing == null ? text : existing);
+	}
+
+	/**
+	 * @param regex the regex to compile
+	 * @param caseSensitive false if the regex should be compiled with CASE_INSENSITIVE
+	 * @return the compiled regex, shared by all users of the same regex
+	 */
+	Pattern compile(String regex, boolean caseSensitive) {
+		ConcurrentHashMap<String, Pattern> regexes = (caseSensitive ? caseSensitiveRegexes : caseInsensitiveRegexes);
+		Pattern pattern = regexes.get(regex);
+		if (pattern == null) {
+			pattern = compileRegex(regex, caseSensitive);
+			Pattern existing = regexes.putIfAbsent(regex, pattern);
+			if (existing != null) {
+				pattern = existing;
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * @param key identifies the pattern text and the configuration it is parsed with
+	 * @return the pattern previously parsed for that key, or null
+	 */
+	PathPattern getPathPattern(String key) {
+		return pathPatterns.get(key);
+	}
+
+	/**
+	 * @param key identifies the pattern text and the configuration it is parsed with
+	 * @param pathPattern a newly parsed pattern
+	 * @return the pattern to use, which is an existing one if another parse for the key got there first
+	 */
+	PathPattern intern(String key, PathPattern pathPattern) {
+		PathPattern existing = pathPatterns.putIfAbsent(key, pathPattern);
+		return (existing == null ? pathPattern : existing);
+	}
+
+	/**
+	 * @return the number of distinct pieces of text, regexes and patterns held
+	 */
+	int size() {
+		return texts.size() + caseSensitiveRegexes.size() + caseInsensitiveRegexes.size() + pathPatterns.size();
+	}
+
+	private static Pattern compileRegex(String regex, boolean caseSensitive) {
+		return (caseSensitive ? Pattern.compile(regex) : Pattern.compile(regex, Pattern.CASE_INSENSITIVE));
+	}
+
+	/**
+	 * A map key that compares the content of a char array, without copying it.
+	 */
+	private static final class Text {
+
+		private final char[] chars;
+
+		private final int hash;
+
+		Text(char[] chars) {
+			this.chars = chars;
+			this.hash = Arrays.hashCode(chars);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof Text && Arrays.equals(chars, ((Text) other).chars));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+}
@@ -15,12 +15,15 @@
  */
 package org.springframework.util.patterns;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * Parser for URI template patterns. It breaks the path pattern into a number of
- * path elements in a linked list.
+ * path elements in a linked list. Once configured a parser can be used by multiple
+ * threads at the same time, the state of each parse is held separately.
  * 
  * @author Andy Clement
  */
@@ -34,45 +37,14 @@ public class PathPatternParser {
 	// Is the parser producing case sensitive PathPattern matchers
 	boolean caseSensitive = true;
 
-	// The input data for parsing
-	private char[] pathPatternData;
+	// Should the parser generate a matcher class for each PathPattern
+	boolean compileMatchers = false;
 
-	// The length of the input data
-	private int pathPatternLength;
+	// Should capture constraints only be checked once the rest of the pattern has matched
+	boolean deferConstraintChecks = false;
 
-	// Current parsing position
-	int pos;
-
-	// How many ? characters in a particular path element
-	private int singleCharWildcardCount;
-
-	// Is the path pattern using * characters in a particular path element
-	private boolean wildcard = false;
-
-	// Is the construct {*...} being used in a particular path element
-	private boolean isCaptureTheRestVariable = false;
-
-	// Has the parser entered a {...} variable capture block in a particular
-	// path element
-	private boolean insideVariableCapture = false;
-
-	// How many variable captures are occuring in a particular path element
-	private int variableCaptureCount = 0;
-
-	// Start of the most recent path element in a particular path element
-	int pathElementStart;
-
-	// Start of the most recent variable capture in a particular path element
-	int variableCaptureStart;
-
-	// Variables captures in this path pattern
-	List<String> capturedVariableNames;
-
-	// The head of the path element chain currently being built
-	PathElement headPE;
-
-	// The most recently constructed path element in the chain
-	PathElement currentPE;
+	// Shares text, compiled regexes and patterns between the patterns this parser produces
+	PathPatternInterner interner = PathPatternInterner.NONE;
 
 	/**
 	 * Default constructor, will use the default path separator to identify
@@ -95,6 +67,47 @@ public class PathPatternParser {
 		this.caseSensitive = caseSensitive;
 	}
 
+	/**
+	 * Determine whether parsed patterns have a matcher class generated for them that performs
+	 * matching in a single method, rather than walking the chain of path elements. Compilation
+	 * takes time so is worthwhile for patterns that will be matched very often.
+	 *
+	 * @param compileMatchers true if matchers should be generated
+	 */
+	public void setCompileMatchers(boolean compileMatchers) {
+		this.compileMatchers = compileMatchers;
+	}
+
+	/**
+	 * Determine whether the regex constraints on captured variables, e.g. {id:[0-9]+}, are checked
+	 * as each variable is reached during matching or only after the rest of the pattern (the
+	 * separators, literals and wildcards) has matched the candidate. Deferring them means no
+	 * constraint is evaluated for a candidate that fails structurally, which is usually most of
+	 * the candidates tried against a large set of patterns. It does not change what matches.
+	 *
+	 * @param deferConstraintChecks true if constraint checks should be deferred
+	 */
+	public void setDeferConstraintChecks(boolean deferConstraintChecks) {
+		this.deferConstraintChecks = deferConstraintChecks;
+	}
+
+	/**
+	 * Determine whether the parser shares identical pieces of the patterns it parses: literal text
+	 * and compiled regexes are held once however many patterns use them, and parsing the same
+	 * pattern text again (with the same configuration) returns the same PathPattern without
+	 * reparsing it. This saves memory and parse time for large sets of patterns with a lot in
+	 * common. The shared data lives as long as the parser, so use one parser for the whole set.
+	 *
+	 * @param internPatterns true if parsed patterns should share their immutable parts
+	 */
+	public void setInternPatterns(boolean internPatterns) {
+		if (!internPatterns) {
+			this.interner = PathPatternInterner.NONE;
+		} else if (this.interner == PathPatternInterner.NONE) {
+			this.interner = new PathPatternInterner();
+		}
+	}
+
 	/**
 	 * Process the path pattern data, a character at a time, breaking it into
 	 * path elements around separator boundaries and verifying the structure at each
@@ -105,231 +118,88 @@ public class PathPatternParser {
 	 * @return a PathPattern for quickly matching paths against the specified path pattern
 	 */
 	public PathPattern parse(String pathPattern) {
-		if (pathPattern == null) {
-			pathPattern = "";
-		}
-		pathPatternData = pathPattern.toCharArray();
-		pathPatternLength = pathPatternData.length;
-		headPE = null;
-		currentPE = null;
-		capturedVariableNames = null;
-		pathElementStart = -1;
-		pos = 0;
-		resetPathElementState();
-		while (pos < pathPatternLength) {
-			char ch = pathPatternData[pos];
-			if (ch == separator) {
-				if (pathElementStart != -1) {
-					pushPathElement(createPathElement());
-				}
-				if (peekDoubleWildcard()) {
-					// Warning message about /** no longer being treated as a multi section matcher
-				}
-				pushPathElement(new SeparatorPathElement(pos, separator));
-			} else {
-				if (pathElementStart == -1) {
-					pathElementStart = pos;
-				}
-				if (ch == '?') {
-					singleCharWildcardCount++;
-				} else if (ch == '{') {
-					if (insideVariableCapture) {
-						throw new PatternParseException(pos, pathPatternData, PatternMessage.ILLEGAL_NESTED_CAPTURE);
-					} else if (pos > 0 && pathPatternData[pos - 1] == '}') {
-						throw new PatternParseException(pos, pathPatternData,
-								PatternMessage.CANNOT_HAVE_ADJACENT_CAPTURES);
-					}
-					insideVariableCapture = true;
-					variableCaptureStart = pos;
-				} else if (ch == '}') {
-					if (!insideVariableCapture) {
-						throw new PatternParseException(pos, pathPatternData, PatternMessage.MISSING_OPEN_CAPTURE);
-					}
-					insideVariableCapture = false;
-					if (isCaptureTheRestVariable && (pos + 1) < pathPatternLength) {
-						throw new PatternParseException(pos + 1, pathPatternData,
-								PatternMessage.NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST);
-					}
-					variableCaptureCount++;
-				} else if (ch == ':') {
-					if (insideVariableCapture) {
-						skipCaptureRegex();
-						insideVariableCapture = false;
-						variableCaptureCount++;
-					}
-				} else if (ch == '*') {
-					if (insideVariableCapture) {
-						if (variableCaptureStart == pos - 1) {
-							isCaptureTheRestVariable = true;
-						}
-					}
-					wildcard = true;
-				}
-				// Check that the characters used for captured variable names are like java identifiers
-				if (insideVariableCapture) {
-					if ((variableCaptureStart + 1 + (isCaptureTheRestVariable ? 1 : 0)) == pos
-							&& !Character.isJavaIdentifierStart(ch)) {
-						throw new PatternParseException(pos, pathPatternData,
-								PatternMessage.ILLEGAL_CHARACTER_AT_START_OF_CAPTURE_DESCRIPTOR,
-								Character.toString(ch));
-
-					} else if ((pos > (variableCaptureStart + 1 + (isCaptureTheRestVariable ? 1 : 0))
-							&& !Character.isJavaIdentifierPart(ch))) {
-						throw new PatternParseException(pos, pathPatternData,
-								PatternMessage.ILLEGAL_CHARACTER_IN_CAPTURE_DESCRIPTOR, Character.toString(ch));
-					}
-				}
-			}
-			pos++;
-		}
-		if (pathElementStart != -1) {
-			pushPathElement(createPathElement());
-		}
-		return new PathPattern(pathPattern, headPE, separator, caseSensitive);
+		return new InternalPathPatternParser(this).parse(pathPattern);
 	}
 
 	/**
-	 * Just hit a ':' and want to jump over the regex specification for this
-	 * variable. pos will be pointing at the ':', we want to skip until the }.
-	 * Need to handle nesting of } in the regex and escaped variants of 
-	 * brackets.
+	 * Parse many patterns, using the common fork join pool to parse them in parallel.
+	 * 
+	 * @param pathPatterns the input path patterns
+	 * @return the result of parsing each pattern, in the same order as the input patterns
 	 */
-	private void skipCaptureRegex() {
-		pos++;
-		int regexStart = pos;
-		int squareBracketDepth = 0; // how deep in [...]
-		int curlyBracketDepth = 0; // how deep in further {...}
-		while (pos < pathPatternLength) {
-			char ch = pathPatternData[pos];
-			if (ch == '[' && pathPatternData[pos - 1] != '\\') {
-				squareBracketDepth++;
-			} else if (ch == ']' && pathPatternData[pos - 1] != '\\') {
-				squareBracketDepth--;
-			}
-			if (ch == '{' && pathPatternData[pos - 1] != '\\' && squareBracketDepth == 0) {
-				curlyBracketDepth++;
-			} else if (ch == '}' && pathPatternData[pos - 1] != '\\' && squareBracketDepth == 0) {
-				if (ch == '}' && squareBracketDepth == 0 && curlyBracketDepth == 0) {
-					if (regexStart == pos) {
-						throw new PatternParseException(regexStart, pathPatternData,
-								PatternMessage.MISSING_REGEX_CONSTRAINT);
-					}
-					return;
-				}
-				curlyBracketDepth--;
-			}
-			if (ch == separator && squareBracketDepth == 0) {
-				throw new PatternParseException(pos, pathPatternData, PatternMessage.MISSING_CLOSE_CAPTURE);
-			}
-			pos++;
-		}
-		throw new PatternParseException(pos - 1, pathPatternData, PatternMessage.MISSING_CLOSE_CAPTURE);
+	public List<ParseResult> parseAll(Collection<String> pathPatterns) {
+		return parseAll(pathPatterns, ForkJoinPool.commonPool());
 	}
 
 	/**
-	 * After processing a separator, a quick peek whether it is followed by **
-	 * (and only ** before the end of the pattern or the next separator)
+	 * Parse many patterns, using the specified fork join pool to parse them in parallel. A pattern
+	 * that fails to parse does not stop the others being parsed, its result holds the exception.
+	 * 
+	 * @param pathPatterns the input path patterns
+	 * @param pool the pool to run the parsing in
+	 * @return the result of parsing each pattern, in the same order as the input patterns
 	 */
-	private boolean peekDoubleWildcard() {
-		if ((pos + 2) >= pathPatternLength) {
-			return false;
-		}
-		if (pathPatternData[pos + 1] != '*' || pathPatternData[pos + 2] != '*') {
-			return false;
-		}
-		return (pos + 3 == pathPatternLength || pathPatternData[pos + 3] == separator);
+	public List<ParseResult> parseAll(Collection<String> pathPatterns, ForkJoinPool pool) {
+		// A parallel stream started from inside a pool runs in that pool
+		return pool.submit(() -> pathPatterns.parallelStream().map(this::parseResult).collect(Collectors.toList()))
+				.join();
 	}
 
-	/**
-	 * @param newPathElement the new path element to add to the chain being built
-	 */
-	private void pushPathElement(PathElement newPathElement) {
-		if (currentPE instanceof CaptureTheRestPathElement) {
-			throw new PatternParseException(newPathElement.pos, pathPatternData,
-					PatternMessage.NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST);
-		}
-		if (headPE == null) {
-			headPE = newPathElement;
-			currentPE = newPathElement;
-		} else {
-			currentPE.next = newPathElement;
-			currentPE = currentPE.next;
+	private ParseResult parseResult(String pathPattern) {
+		try {
+			return new ParseResult(pathPattern, parse(pathPattern), null);
+		} catch (PatternParseException ppe) {
+			return new ParseResult(pathPattern, null, ppe);
 		}
-		resetPathElementState();
 	}
 
 	/**
-	 * Used the knowledge built up whilst processing since the last path element to determine what kind of path
-	 * element to create.
-	 * @return the new path element
+	 * The outcome of parsing one of the patterns passed to {@link PathPatternParser#parseAll(Collection)},
+	 * either a PathPattern or the exception explaining why the pattern could not be parsed.
 	 */
-	private PathElement createPathElement() {
-		if (insideVariableCapture) {
-			throw new PatternParseException(pos, pathPatternData, PatternMessage.MISSING_CLOSE_CAPTURE);
+	public static final class ParseResult {
+
+		private final String patternString;
+
+		private final PathPattern pathPattern;
+
+		private final PatternParseException exception;
+
+		ParseResult(String patternString, PathPattern pathPattern, PatternParseException exception) {
+			this.patternString = patternString;
+			this.pathPattern = pathPattern;
+			this.exception = exception;
 		}
-		char[] pathElementText = new char[pos - pathElementStart];
-		System.arraycopy(pathPatternData, pathElementStart, pathElementText, 0, pos - pathElementStart);
-		PathElement newPE = null;
-		if (variableCaptureCount > 0) {
-			if (variableCaptureCount == 1 && pathElementStart == variableCaptureStart && pathPatternData[pos - 1] == '}') {
-				if (isCaptureTheRestVariable) {
-					// It is {*....} 
-					newPE = new CaptureTheRestPathElement(pathElementStart, pathElementText);
-				} else {
-					// It is a full capture of this element (possibly with constraint), for example: /foo/{abc}/
-					newPE = new CaptureVariablePathElement(pathElementStart, pathElementText, caseSensitive);
-					recordCapturedVariable(pathElementStart, ((CaptureVariablePathElement) newPE).getVariableName());
-				}
-			} else {
-				if (isCaptureTheRestVariable) {
-					throw new PatternParseException(pathElementStart, pathPatternData,
-							PatternMessage.BADLY_FORMED_CAPTURE_THE_REST);
-				}
-				RegexPathElement newRegexSection = new RegexPathElement(pathElementStart, pathElementText, caseSensitive);
-				for (String variableName : newRegexSection.getVariableNames()) {
-					recordCapturedVariable(pathElementStart, variableName);
-				}
-				newPE = newRegexSection;
-			}
-		} else {
-			if (wildcard) {
-				if (pos - 1 == pathElementStart) {
-					newPE = new WildcardPathElement(pathElementStart);
-				} else {
-					newPE = new RegexPathElement(pathElementStart, pathElementText, caseSensitive);
-				}
-			} else if (singleCharWildcardCount!=0) {
-				newPE = new SingleCharWildcardedPathElement(pathElementStart, pathElementText, singleCharWildcardCount, caseSensitive);
-			} else {
-				newPE = new LiteralPathElement(pathElementStart, pathElementText, caseSensitive);
-			}
+
+		/**
+		 * @return the text of the pattern that was parsed
+		 */
+		public String getPatternString() {
+			return patternString;
 		}
-		return newPE;
-	}
 
-	/**
-	 * Reset all the flags and position markers computed during path element processing.
-	 */
-	private void resetPathElementState() {
-		pathElementStart = -1;
-		singleCharWildcardCount = 0;
-		insideVariableCapture = false;
-		variableCaptureCount = 0;
-		wildcard = false;
-		isCaptureTheRestVariable = false;
-		variableCaptureStart = -1;
-	}
+		/**
+		 * @return the parsed pattern, or null if it could not be parsed
+		 */
+		public PathPattern getPathPattern() {
+			return pathPattern;
+		}
 
-	/**
-	 * Record a new captured variable. If it clashes with an existing one then report an error.
-	 */
-	private void recordCapturedVariable(int pos, String variableName) {
-		if (capturedVariableNames == null) {
-			capturedVariableNames = new ArrayList<>();
+		/**
+		 * @return the reason the pattern could not be parsed, or null if it was parsed
+		 */
+		public PatternParseException getException() {
+			return exception;
+		}
+
+		public boolean isParsed() {
+			return exception == null;
 		}
-		if (capturedVariableNames.contains(variableName)) {
-			throw new PatternParseException(pos, this.pathPatternData, PatternMessage.ILLEGAL_DOUBLE_CAPTURE, variableName);
+
+		public String toString() {
+			return "ParseResult(" + patternString + "," + (isParsed() ? pathPattern.toChainString() : exception.getMessage()) + ")";
 		}
-		capturedVariableNames.add(variableName);
+
 	}
-}
\ No newline at end of file
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.patterns.PathPattern.MatchingContext;
+
+/**
+ * A registry of many {@link PathPattern} objects that can quickly determine which of them
+ * match a candidate path. The leading separator and literal path elements of the registered
+ * patterns are merged into a shared trie, the remaining part of each pattern chain (starting at
+ * its first capture, wildcard or regex path element) hangs off the trie node where the literal
+ * prefix ends. A lookup walks the candidate path once down the trie, only attempting the
+ * remaining chains of patterns whose literal prefix has matched. This means the cost of a lookup
+ * grows with the depth of the path rather than the number of registered patterns.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternRegistry {
+
+	// The separator all registered patterns must be using
+	private final char separator;
+
+	// Root of the trie for case sensitive patterns
+	private final Node root = new Node();
+
+	// Root of the trie for case insensitive patterns, literals in here are lower case
+	private final Node caseInsensitiveRoot = new Node();
+
+	// How many patterns have been registered
+	private int size;
+
+	/**
+	 * Create a registry for patterns using the default separator.
+	 */
+	public PathPatternRegistry() {
+		this(PathPatternParser.DEFAULT_SEPARATOR);
+	}
+
+	/**
+	 * Create a registry for patterns using the specified separator.
+	 *
+	 * @param separator the separator the registered patterns have been parsed with
+	 */
+	public PathPatternRegistry(char separator) {
+		this.separator = separator;
+	}
+
+	/**
+	 * Add a pattern to the registry.
+	 *
+	 * @param pathPattern a pattern produced by {@link PathPatternParser#parse(String)}
+	 * @throws IllegalArgumentException if the pattern was parsed using a different separator to the registry
+	 */
+	public void register(PathPattern pathPattern) {
+		if (pathPattern.getSeparator() != separator) {
+			throw new IllegalArgumentException("Pattern '" + pathPattern.getPatternString()
+					+ "' does not use the separator '" + separator + "' of this registry");
+		}
+		Node node = (pathPattern.isCaseSensitive() ? root : caseInsensitiveRoot);
+		PathElement pe = pathPattern.getHeadSection();
+		while (pe != null) {
+			if (pe instanceof SeparatorPathElement) {
+				node = node.getOrCreateSeparatorChild();
+			} else if (pe instanceof LiteralPathElement) {
+				node = node.getOrCreateLiteralChild(pe.getText());
+			} else {
+				break;
+			}
+			pe = pe.next;
+		}
+		if (pe == null) {
+			node.addTerminal(pathPattern);
+		} else {
+			node.addBranch(new Branch(pathPattern, pe));
+		}
+		size++;
+	}
+
+	/**
+	 * @return the number of patterns that have been registered
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Determine all the registered patterns that match the candidate path. The result
+	 * is in no particular order, use a {@link PatternComparatorConsideringPath} if it needs
+	 * sorting.
+	 *
+	 * @param path the candidate path
+	 * @return the registered patterns matching the path, an empty list if none match
+	 */
+	public List<PathPattern> findMatches(CharSequence path) {
+		return findMatches(path, new MatchingContext());
+	}
+
+	/**
+	 * Determine all the registered patterns that match the candidate path. The result
+	 * is in no particular order, use a {@link PatternComparatorConsideringPath} if it needs
+	 * sorting.
+	 *
+	 * @param path the candidate path, which may already be a {@link TokenizedPath}
+	 * @param matchingContext a context (that may be reused across lookups) to use when matching
+	 * @return the registered patterns matching the path, an empty list if none match
+	 */
+	public List<PathPattern> findMatches(CharSequence path, MatchingContext matchingContext) {
+		if (!(path instanceof TokenizedPath) || ((TokenizedPath) path).getSeparator() != separator) {
+			// Tokenize once so the separators are not rescanned for each candidate pattern chain
+			path = new TokenizedPath(path, separator);
+		}
+		List<PathPattern> matches = new ArrayList<>();
+		collectMatches(root, (TokenizedPath) path, true, matchingContext, matches);
+		collectMatches(caseInsensitiveRoot, (TokenizedPath) path, false, matchingContext, matches);
+		return matches;
+	}
+
+	/**
+	 * Walk down the trie from the specified node consuming the candidate path a separator or a
+	 * literal segment at a time. At each node visited the pattern chains hanging off it are tried
+	 * against the remainder of the path.
+	 */
+	private void collectMatches(Node node, TokenizedPath path, boolean caseSensitive, MatchingContext matchingContext,
+			List<PathPattern> matches) {
+		int pathLength = path.length();
+		int pos = 0;
+		while (node != null) {
+			if (node.branches != null) {
+				for (Branch branch : node.branches) {
+					if (branch.pathPattern.matchesFrom(branch.pathElement, pos, path, matchingContext)) {
+						matches.add(branch.pathPattern);
+					}
+				}
+			}
+			if (pos == pathLength) {
+				if (node.terminals != null) {
+					matches.addAll(node.terminals);
+				}
+				return;
+			}
+			if (path.charAt(pos) == separator) {
+				node = node.separatorChild;
+				pos++;
+			} else {
+				if (node.literalChildren == null) {
+					return;
+				}
+				int segmentEnd = path.nextSeparator(pos);
+				node = node.literalChildren.get(segment(path, pos, segmentEnd, caseSensitive));
+				pos = segmentEnd;
+			}
+		}
+	}
+
+	/**
+	 * @return the segment of the path between the specified positions, lower cased (in the same
+	 * way as {@link LiteralPathElement}) if the lookup is not case sensitive
+	 */
+	private String segment(CharSequence path, int start, int end, boolean caseSensitive) {
+		if (caseSensitive) {
+			return path.subSequence(start, end).toString();
+		}
+		char[] segment = new char[end - start];
+		for (int i = start; i < end; i++) {
+			segment[i - start] = PathElement.toLowerCase(path.charAt(i));
+		}
+		return new String(segment);
+	}
+
+	/**
+	 * A node in the trie, reached by consuming a particular sequence of separators and literal
+	 * segments.
+	 */
+	private static class Node {
+
+		// The node reached by consuming a separator from this node
+		Node separatorChild;
+
+		// The nodes reached by consuming a literal segment from this node
+		Map<String, Node> literalChildren;
+
+		// Patterns that are completely matched on reaching this node
+		List<PathPattern> terminals;
+
+		// Patterns whose remaining chain must be tried from this node
+		List<Branch> branches;
+
+		Node getOrCreateSeparatorChild() {
+			if (separatorChild == null) {
+				separatorChild = new Node();
+			}
+			return separatorChild;
+		}
+
+		Node getOrCreateLiteralChild(String literal) {
+			if (literalChildren == null) {
+				literalChildren = new HashMap<>();
+			}
+			Node child = literalChildren.get(literal);
+			if (child == null) {
+				child = new Node();
+				literalChildren.put(literal, child);
+			}
+			return child;
+		}
+
+		void addTerminal(PathPattern pathPattern) {
+			if (terminals == null) {
+				terminals = new ArrayList<>();
+			}
+			terminals.add(pathPattern);
+		}
+
+		void addBranch(Branch branch) {
+			if (branches == null) {
+				branches = new ArrayList<>();
+			}
+			branches.add(branch);
+		}
+	}
+
+	/**
+	 * The remaining chain of a pattern that hangs off a trie node.
+	 */
+	private static class Branch {
+
+		final PathPattern pathPattern;
+
+		// The first path element of the pattern not represented in the trie
+		final PathElement pathElement;
+
+		Branch(PathPattern pathPattern, PathElement pathElement) {
+			this.pathPattern = pathPattern;
+			this.pathElement = pathElement;
+		}
+	}
+
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves parsed patterns in a compact binary form that can be loaded without running the parser.
+ * A snapshot of a large, fixed, set of patterns can be written at build time and shipped with an
+ * application so that it starts without parsing them. For each pattern the snapshot holds its
+ * text, separator and the options it was parsed with, then the kind and length of each path
+ * element in its chain along with what the parser worked out about the element (e.g. the names
+ * of the variables a regex element captures) and the state computed for the whole pattern (score,
+ * normalized length, length bounds...). Loading builds the path elements and the pattern directly
+ * from those, without scanning the text, and regexes are only compiled when first used. The
+ * snapshot ends with a checksum of everything before it, if that does not match the data is
+ * damaged and the snapshot is not loaded at all: even the pattern text cannot be trusted.
+ * <p>
+ * The layout of each pattern record (text, separator, options, then the element data with its
+ * length) never changes, only the encoding of the element data is versioned. A snapshot from a
+ * different version is still loaded, the patterns are simply reparsed from their text. Patterns
+ * whose element data does not describe them correctly are also reparsed.
+ * <pre class="code">
+ * PathPatternSnapshot.write(patterns, out);
+ * ...
+ * List&lt;PathPattern&gt; patterns = PathPatternSnapshot.read(in);
+ * </pre>
+ *
+ * @author Andy Clement
+ */
+public final class PathPatternSnapshot {
+
+	private static final int MAGIC = 0x5050534E; // PPSN
+
+	static final int VERSION = 2;
+
+	// Option flags
+	private static final int CASE_SENSITIVE = 1;
+	private static final int COMPILED = 2;
+	private static final int DEFER_CONSTRAINT_CHECKS = 4;
+
+	private PathPatternSnapshot() {
+	}
+
+	/**
+	 * @param pathPatterns the patterns to save
+	 * @param out where to write the snapshot, it is not closed
+	 * @throws IOException if there is a problem writing the snapshot
+	 */
+	public static void write(Collection<PathPattern> pathPatterns, OutputStream out) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+		DataOutputStream data = new DataOutputStream(checked);
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeInt(pathPatterns.size());
+		ByteArrayOutputStream elements = new ByteArrayOutputStream();
+		for (PathPattern pathPattern : pathPatterns) {
+			byte[] text = pathPattern.getPatternString().getBytes(StandardCharsets.UTF_8);
+			data.writeInt(text.length);
+			data.write(text);
+			data.writeChar(pathPattern.getSeparator());
+			data.writeByte(getOptions(pathPattern));
+			elements.reset();
+			writeElements(pathPattern, elements);
+			data.writeInt(elements.size());
+			elements.writeTo(data);
+		}
+		data.flush();
+		data.writeInt((int) checked.getChecksum().getValue());
+		data.flush();
+	}
+
+	/**
+	 * @param in the snapshot to read, it is read to the end but not closed
+	 * @return the patterns in the snapshot, in the order they were written
+	 * @throws IOException if there is a problem reading the snapshot, it is not a snapshot or it is damaged
+	 */
+	public static List<PathPattern> read(InputStream in) throws IOException {
+		byte[] snapshot = readFully(in);
+		Input data = new Input(snapshot);
+		if (data.readFixedInt() != MAGIC) {
+			throw new IOException("Not a path pattern snapshot");
+		}
+		int version = data.readUnsignedShort();
+		int count = data.readFixedInt();
+		boolean rebuild = (version == VERSION);
+		if (rebuild && !isIntact(snapshot)) {
+			throw new IOException("Path pattern snapshot is damaged, its checksum does not match");
+		}
+		List<PathPattern> pathPatterns = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int textStart = data.pos + 4;
+			int textLength = data.readFixedInt();
+			data.skip(textLength);
+			String patternString = new String(data.data, textStart, textLength, StandardCharsets.UTF_8);
+			char separator = (char) data.readUnsignedShort();
+			int options = data.readUnsignedByte();
+			Input elements = data.slice(data.readFixedInt());
+			PathPattern pathPattern = null;
+			if (rebuild) {
+				pathPattern = rebuild(patternString, separator, options, elements);
+			}
+			if (pathPattern == null) {
+				pathPattern = createParser(separator, options).parse(patternString);
+			}
+			pathPatterns.add(pathPattern);
+		}
+		if (version == VERSION) {
+			// The checksum
+			data.skip(4);
+		}
+		return pathPatterns;
+	}
+
+	/**
+	 * @return true if the snapshot ends with the checksum of the rest of it
+	 */
+	private static boolean isIntact(byte[] snapshot) throws EOFException {
+		if (snapshot.length < 4) {
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(snapshot, 0, snapshot.length - 4);
+		return (int) crc.getValue() == new Input(snapshot, snapshot.length - 4, snapshot.length).readFixedInt();
+	}
+
+	private static int getOptions(PathPattern pathPattern) {
+		int options = 0;
+		if (pathPattern.isCaseSensitive()) {
+			options |= CASE_SENSITIVE;
+		}
+		if (pathPattern.isCompiled()) {
+			options |= COMPILED;
+		}
+		if (pathPattern.isConstraintChecksDeferred()) {
+			options |= DEFER_CONSTRAINT_CHECKS;
+		}
+		return options;
+	}
+
+	/**
+	 * The element data is the element count and capture count, then the kind and text length of
+	 * each element (they follow one another in the pattern text, so their positions are not
+	 * needed) with anything else that cannot be cheaply recomputed from the text, then the state
+	 * of the pattern.
+	 */
+	private static void writeElements(PathPattern pathPattern, ByteArrayOutputStream out) {
+		int count = 0;
+		for (PathElement pe = pathPattern.getHeadSection(); pe != null; pe = pe.next) {
+			count++;
+		}
+		writeInt(out, count);
+		writeInt(out, pathPattern.getCapturedVariableCount());
+		int patternLength = pathPattern.getPatternString().length();
+		for (PathElement pe = pathPattern.getHeadSection(); pe != null; pe = pe.next) {
+			int kind = PathElementKind.of(pe);
+			out.write(kind);
+			writeInt(out, (pe.next != null ? pe.next.pos : patternLength) - pe.pos);
+			if (kind == PathElementKind.CAPTURE_VARIABLE) {
+				writeInt(out, ((CaptureVariablePathElement) pe).getVariableName().length());
+			} else if (kind == PathElementKind.REGEX) {
+				List<String> variableNames = ((RegexPathElement) pe).getVariableNames();
+				writeInt(out, pe.getWildcardCount());
+				writeInt(out, variableNames.size());
+				for (String variableName : variableNames) {
+					byte[] name = variableName.getBytes(StandardCharsets.UTF_8);
+					writeInt(out, name.length);
+					out.write(name, 0, name.length);
+				}
+			}
+		}
+		writeInt(out, pathPattern.getScore());
+		writeInt(out, pathPattern.getNormalizedLength());
+		writeInt(out, pathPattern.minLength);
+		writeInt(out, pathPattern.maxLength);
+		writeInt(out, pathPattern.minSeparatorCount);
+		writeInt(out, pathPattern.getFlags());
+		long fingerprint = pathPattern.getLiteralFingerprint();
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			out.write((int) (fingerprint >>> shift));
+		}
+	}
+
+	/**
+	 * @return the rebuilt pattern or null if the element data does not describe the pattern correctly
+	 */
+	private static PathPattern rebuild(String patternString, char separator, int options, Input in) {
+		try {
+			boolean caseSensitive = (options & CASE_SENSITIVE) != 0;
+			boolean deferConstraintChecks = (options & DEFER_CONSTRAINT_CHECKS) != 0;
+			int patternLength = patternString.length();
+			int count = in.readInt();
+			String[] variableNames = new String[in.readInt()];
+			PathElement head = null;
+			PathElement current = null;
+			int captureSlot = 0;
+			int pos = 0;
+			for (int i = 0; i < count; i++) {
+				int kind = in.readUnsignedByte();
+				int end = pos + in.readInt();
+				if (end <= pos || end > patternLength) {
+					return null;
+				}
+				PathElement pe;
+				switch (kind) {
+					case PathElementKind.SEPARATOR:
+						pe = new SeparatorPathElement(pos, separator);
+						break;
+					case PathElementKind.LITERAL:
+						pe = new LiteralPathElement(pos, chars(patternString, pos, end), caseSensitive,
+								PathPatternInterner.NONE);
+						break;
+					case PathElementKind.SINGLE_CHAR_WILDCARDED:
+						int questionMarkCount = 0;
+						char[] text = chars(patternString, pos, end);
+						for (char ch : text) {
+							if (ch == '?') {
+								questionMarkCount++;
+							}
+						}
+						if (questionMarkCount == 0) {
+							return null;
+						}
+						pe = new SingleCharWildcardedPathElement(pos, text, questionMarkCount, caseSensitive);
+						break;
+					case PathElementKind.WILDCARD:
+						if (end != pos + 1 || patternString.charAt(pos) != '*') {
+							return null;
+						}
+						pe = new WildcardPathElement(pos);
+						break;
+					case PathElementKind.GLOB:
+						pe = new GlobPathElement(pos, chars(patternString, pos, end), caseSensitive);
+						break;
+					case PathElementKind.CAPTURE_VARIABLE:
+						// {name} or {name:constraint}
+						int nameEnd = pos + 1 + in.readInt();
+						String variableName = patternString.substring(pos + 1, nameEnd);
+						String constraint = (nameEnd + 1 < end ? patternString.substring(nameEnd + 1, end - 1) : null);
+						pe = new CaptureVariablePathElement(pos, variableName, constraint, caseSensitive, captureSlot,
+								deferConstraintChecks);
+						variableNames[captureSlot++] = variableName;
+						break;
+					case PathElementKind.CAPTURE_THE_REST:
+						CaptureTheRestPathElement captureTheRest = new CaptureTheRestPathElement(pos,
+								chars(patternString, pos, end), captureSlot);
+						variableNames[captureSlot++] = captureTheRest.getVariableName();
+						pe = captureTheRest;
+						break;
+					case PathElementKind.REGEX:
+						int wildcardCount = in.readInt();
+						int regexCaptureCount = in.readInt();
+						List<String> regexVariableNames = new ArrayList<>(regexCaptureCount);
+						for (int v = 0; v < regexCaptureCount; v++) {
+							regexVariableNames.add(in.readString());
+						}
+						pe = new RegexPathElement(pos, chars(patternString, pos, end), caseSensitive,
+								captureSlot, regexVariableNames, wildcardCount);
+						for (String regexVariableName : regexVariableNames) {
+							variableNames[captureSlot++] = regexVariableName;
+						}
+						break;
+					default:
+						return null;
+				}
+				if (head == null) {
+					head = pe;
+				} else {
+					current.next = pe;
+				}
+				current = pe;
+				pos = end;
+			}
+			if (pos != patternLength || captureSlot != variableNames.length) {
+				return null;
+			}
+			PathPattern pathPattern = new PathPattern(patternString, head, separator, caseSensitive, variableNames,
+					in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+			if (in.remaining() != 0) {
+				return null;
+			}
+			if ((options & COMPILED) != 0) {
+				pathPattern.compile();
+			}
+			return pathPattern;
+		} catch (IOException | RuntimeException ex) {
+			// Includes running off the end of the element data
+			return null;
+		}
+	}
+
+	private static char[] chars(String text, int start, int end) {
+		char[] chars = new char[end - start];
+		text.getChars(start, end, chars, 0);
+		return chars;
+	}
+
+	private static PathPatternParser createParser(char separator, int options) {
+		PathPatternParser parser = new PathPatternParser(separator);
+		parser.setCaseSensitive((options & CASE_SENSITIVE) != 0);
+		parser.setCompileMatchers((options & COMPILED) != 0);
+		parser.setDeferConstraintChecks((options & DEFER_CONSTRAINT_CHECKS) != 0);
+		return parser;
+	}
+
+	/**
+	 * Write a non negative int in as few bytes as possible, seven bits per byte.
+	 */
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Read the rest of the stream into one array, so it is decoded without a call on the stream for
+	 * each value read.
+	 */
+	private static byte[] readFully(InputStream in) throws IOException {
+		byte[] buffer = new byte[Math.max(in.available(), 8192)];
+		int length = 0;
+		int read;
+		while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+			length += read;
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+		return (length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+	}
+
+	/**
+	 * Reads values from a range of a snapshot held in memory.
+	 */
+	private static class Input {
+
+		final byte[] data;
+
+		int pos;
+
+		private final int end;
+
+		Input(byte[] data) {
+			this(data, 0, data.length);
+		}
+
+		private Input(byte[] data, int pos, int end) {
+			this.data = data;
+			this.pos = pos;
+			this.end = end;
+		}
+
+		/**
+		 * @return an input for the next length bytes, which are skipped in this input
+		 */
+		Input slice(int length) throws EOFException {
+			skip(length);
+			return new Input(data, pos - length, pos);
+		}
+
+		void skip(int length) throws EOFException {
+			if (length < 0 || length > end - pos) {
+				throw new EOFException("Snapshot is truncated");
+			}
+			pos += length;
+		}
+
+		int readUnsignedByte() throws EOFException {
+			if (pos == end) {
+				throw new EOFException("Snapshot is truncated");
+			}
+			return data[pos++] & 0xFF;
+		}
+
+		int readUnsignedShort() throws EOFException {
+			return (readUnsignedByte() << 8) | readUnsignedByte();
+		}
+
+		int readFixedInt() throws EOFException {
+			return (readUnsignedShort() << 16) | readUnsignedShort();
+		}
+
+		long readLong() throws EOFException {
+			return ((long) readFixedInt() << 32) | (readFixedInt() & 0xFFFFFFFFL);
+		}
+
+		/**
+		 * Read an int written by {@link PathPatternSnapshot#writeInt(ByteArrayOutputStream, int)}.
+		 */
+		int readInt() throws EOFException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IllegalStateException("Malformed element data");
+		}
+
+		String readString() throws EOFException {
+			int length = readInt();
+			skip(length);
+			return new String(data, pos - length, length, StandardCharsets.UTF_8);
+		}
+
+		int remaining() {
+			return end - pos;
+		}
+
+	}
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.util.patterns.PathPattern.MatchingContext;
+
+/**
+ * Operations on collections of {@link PathPattern} objects.
+ *
+ * @author Andy Clement
+ */
+public final class PathPatterns {
+
+	// Below this size an insertion sort is quicker than setting up a radix sort
+	private static final int RADIX_SORT_THRESHOLD = 64;
+
+	private PathPatterns() {
+	}
+
+	/**
+	 * Sort patterns so the most specific are first, in the same order as sorting them with a
+	 * {@link PathPatternComparator} (nulls are sorted last). The sort is stable. Large lists are
+	 * sorted with a radix sort of the {@link PathPattern#getSortKey() sort keys} of the patterns,
+	 * so no comparisons are made at all, and the bytes of the key that are the same for every
+	 * pattern (most of them, for a typical set of patterns) cost a single counting pass.
+	 * @param pathPatterns the patterns to sort
+	 */
+	public static void sort(List<PathPattern> pathPatterns) {
+		sort(pathPatterns, null);
+	}
+
+	/**
+	 * Sort patterns so the most specific are first, in the same order as sorting them with a
+	 * {@link PatternComparatorConsideringPath} for the path: any pattern whose text is the path
+	 * itself is sorted first. Whether a pattern is the path is worked out once per pattern, rather
+	 * than on every comparison. The sort is stable.
+	 * @param pathPatterns the patterns to sort, typically those that matched the path
+	 * @param path the path being handled, or null to sort without considering a path
+	 */
+	public static void sort(List<PathPattern> pathPatterns, String path) {
+		int size = pathPatterns.size();
+		PathPattern[] sorted = new PathPattern[size];
+		long[] keys = new long[size];
+		int count = 0;
+		for (PathPattern pathPattern : pathPatterns) {
+			if (pathPattern != null) {
+				sorted[count] = pathPattern;
+				keys[count++] = (path == null ? pathPattern.getSortKey() : getSortKey(pathPattern, path));
+			}
+		}
+		if (count < RADIX_SORT_THRESHOLD) {
+			insertionSort(sorted, keys, count);
+		} else {
+			radixSort(sorted, keys, count);
+		}
+		for (int i = 0; i < size; i++) {
+			pathPatterns.set(i, i < count ? sorted[i] : null);
+		}
+	}
+
+	/**
+	 * Find the pattern that would be first if all the patterns that match the path were sorted
+	 * with a {@link PatternComparatorConsideringPath} for the path, without collecting or sorting
+	 * them. The patterns are visited once, keeping the best match so far. A pattern that could not
+	 * be better than that, according to its sort key, is not matched against the path at all.
+	 * Where patterns are equally good the first of them is returned.
+	 * @param pathPatterns the patterns to consider, nulls are ignored
+	 * @param path the path to match
+	 * @return the result of matching the best pattern, including its captured variables, or null
+	 * if no pattern matches
+	 */
+	public static PathMatchResult findBestMatch(Iterable<PathPattern> pathPatterns, String path) {
+		return findBestMatch(pathPatterns, path, new MatchingContext());
+	}
+
+	/**
+	 * Find the best matching pattern, as {@link #findBestMatch(Iterable, String)} does, using the
+	 * supplied context for matching.
+	 * @param pathPatterns the patterns to consider, nulls are ignored
+	 * @param path the path to match
+	 * @param matchingContext a context (that may be reused across matches) to use for the matching
+	 * @return the result of matching the best pattern, including its captured variables, or null
+	 * if no pattern matches
+	 */
+	public static PathMatchResult findBestMatch(Iterable<PathPattern> pathPatterns, String path,
+			MatchingContext matchingContext) {
+		PathPattern best = null;
+		long bestKey = Long.MAX_VALUE;
+		int[] bestCaptures = null;
+		TokenizedPath tokenizedPath = null;
+		for (PathPattern pathPattern : pathPatterns) {
+			if (pathPattern == null) {
+				continue;
+			}
+			long key = getSortKey(pathPattern, path);
+			if (key >= bestKey) {
+				continue;
+			}
+			if (tokenizedPath == null) {
+				// Patterns reject a tokenized path on its separators and literal segments before matching
+				tokenizedPath = new TokenizedPath(path, pathPattern.getSeparator());
+			}
+			// Patterns without variables may be empty, which only matches() handles
+			int captureCount = pathPattern.getCapturedVariableCount();
+			if (captureCount == 0 ? pathPattern.matches(tokenizedPath, matchingContext)
+					: pathPattern.matchRecordingCaptures(tokenizedPath, matchingContext)) {
+				best = pathPattern;
+				bestKey = key;
+				// Keep the captures, the context is overwritten by the next match attempt
+				bestCaptures = Arrays.copyOf(matchingContext.captures, captureCount * 2);
+				if (key == 0) {
+					// Nothing beats an exact match
+					break;
+				}
+			}
+		}
+		return (best == null ? null : new PathMatchResult(best, path, bestCaptures));
+	}
+
+	/**
+	 * @return a key for sorting the pattern when handling the path, the exact match of the path
+	 * has the lowest key and all other patterns follow in the order of their sort keys
+	 */
+	static long getSortKey(PathPattern pathPattern, String path) {
+		// Pattern sort keys never use the top bit so adding one cannot overflow
+		return (pathPattern.getPatternString().equals(path) ? 0 : pathPattern.getSortKey() + 1);
+	}
+
+	/**
+	 * Stable sort of the first count patterns by their keys, for when there are few of them.
+	 */
+	static void insertionSort(PathPattern[] pathPatterns, long[] keys, int count) {
+		for (int i = 1; i < count; i++) {
+			long key = keys[i];
+			PathPattern pathPattern = pathPatterns[i];
+			int j = i - 1;
+			while (j >= 0 && keys[j] > key) {
+				keys[j + 1] = keys[j];
+				pathPatterns[j + 1] = pathPatterns[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			pathPatterns[j + 1] = pathPattern;
+		}
+	}
+
+	/**
+	 * Stable least significant digit radix sort of the first count patterns by their keys, a byte
+	 * at a time. Keys are never negative so ordering the bytes as unsigned values is correct.
+	 */
+	static void radixSort(PathPattern[] pathPatterns, long[] keys, int count) {
+		if (count < 2) {
+			return;
+		}
+		PathPattern[] patternBuffer = new PathPattern[count];
+		long[] keyBuffer = new long[count];
+		int[] offsets = new int[256];
+		for (int shift = 0; shift < 64; shift += 8) {
+			Arrays.fill(offsets, 0);
+			for (int i = 0; i < count; i++) {
+				offsets[(int) (keys[i] >>> shift) & 0xFF]++;
+			}
+			if (offsets[(int) (keys[0] >>> shift) & 0xFF] == count) {
+				// Every key has the same byte here, nothing would move
+				continue;
+			}
+			int total = 0;
+			for (int b = 0; b < 256; b++) {
+				int bucketSize = offsets[b];
+				offsets[b] = total;
+				total += bucketSize;
+			}
+			for (int i = 0; i < count; i++) {
+				int destination = offsets[(int) (keys[i] >>> shift) & 0xFF]++;
+				patternBuffer[destination] = pathPatterns[i];
+				keyBuffer[destination] = keys[i];
+			}
+			System.arraycopy(patternBuffer, 0, pathPatterns, 0, count);
+			System.arraycopy(keyBuffer, 0, keys, 0, count);
+		}
+	}
+
+}
@@ -1,158 +1,336 @@
-///*
-// * Copyright 2016 the original author or authors.
-// *
-// * Licensed under the Apache License, Version 2.0 (the "License");
-// * you may not use this file except in compliance with the License.
-// * You may obtain a copy of the License at
-// *
-// *      http://www.apache.org/licenses/LICENSE-2.0
-// *
-// * Unless required by applicable law or agreed to in writing, software
-// * distributed under the License is distributed on an "AS IS" BASIS,
-// * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-// * See the License for the specific language governing permissions and
-// * limitations under the License.
-// */
-//package org.springframework.util.patterns;
-//
-///**
-// * Combine patterns according to some basic rules.
-// * 
-// * @author Andy Clement
-// */
-//public class PatternCombiner {
-//
-//	/**
-//	 * Combine two patterns into a new pattern.
-//	 * <p>This implementation simply concatenates the two patterns, unless
-//	 * the first pattern contains a file extension match (e.g., {@code *.html}).
-//	 * In that case, the second pattern will be merged into the first. Otherwise,
-//	 * an {@code IllegalArgumentException} will be thrown.
-//	 * <h3>Examples</h3>
-//	 * <table border="1">
-//	 * <tr><th>Pattern 1</th><th>Pattern 2</th><th>Result</th></tr>
-//	 * <tr><td>{@code null}</td><td>{@code null}</td><td>&nbsp;</td></tr>
-//	 * <tr><td>/hotels</td><td>{@code null}</td><td>/hotels</td></tr>
-//	 * <tr><td>{@code null}</td><td>/hotels</td><td>/hotels</td></tr>
-//	 * <tr><td>/hotels</td><td>/bookings</td><td>/hotels/bookings</td></tr>
-//	 * <tr><td>/hotels</td><td>bookings</td><td>/hotels/bookings</td></tr>
-//	 * <tr><td>/hotels/*</td><td>/bookings</td><td>/hotels/bookings</td></tr>
-//	 * <tr><td>/hotels/&#42;&#42;</td><td>/bookings</td><td>/hotels/&#42;&#42;/bookings</td></tr>
-//	 * <tr><td>/hotels</td><td>{hotel}</td><td>/hotels/{hotel}</td></tr>
-//	 * <tr><td>/hotels/*</td><td>{hotel}</td><td>/hotels/{hotel}</td></tr>
-//	 * <tr><td>/hotels/&#42;&#42;</td><td>{hotel}</td><td>/hotels/&#42;&#42;/{hotel}</td></tr>
-//	 * <tr><td>/*.html</td><td>/hotels.html</td><td>/hotels.html</td></tr>
-//	 * <tr><td>/*.html</td><td>/hotels</td><td>/hotels.html</td></tr>
-//	 * <tr><td>/*.html</td><td>/*.txt</td><td>{@code IllegalArgumentException}</td></tr>
-//	 * </table>
-//	 * @param pattern1 the first pattern
-//	 * @param pattern2 the second pattern
-//	 * @return the combination of the two patterns
-//	 * @throws IllegalArgumentException if the two patterns cannot be combined
-//	 */
-//	public String combine(PathPattern pattern1, PathPattern pattern2) {
-//		if (pattern1.getSeparator() != pattern2.getSeparator()) {
-//			throw new IllegalArgumentException("Patterns using different separators cannot be combined");
-//		}
-//		String pattern1string = pattern1.getPatternString();
-//		String pattern2string = pattern2.getPatternString();
-//		return combine(pattern1string, pattern2string);
-//	}
-//		
-//	public String combine(String pattern1string, String pattern2string) {
-//		// If one of them is empty the result is the other. If both empty the result is ""
-//		if (pattern1string.length()==0) {
-//			if (pattern2string.length()==0) {
-//				return "";
-//			} else {
-//				return pattern2string;
-//			}
-//		} else if (pattern2string.length()==0) {
-//			return pattern1string;
-//		}
-//		
-//		boolean pattern1containsUriVar = pattern1string.indexOf('{')!=-1;//getCapturedVariableCount()>0;
-//		// TODO case sensitivity of the patterns, at all relevant?
-//		if (!pattern1string.equals(pattern2string) && !pattern1containsUriVar && pattern1string.matches(pattern2.getPatternString())) {
-//			return pattern2.getPatternString();
-//		}
-////		boolean pattern1ContainsUriVar = (pattern1.indexOf('{') != -1);
-////		if (!pattern1.equals(pattern2) && !pattern1ContainsUriVar && match(pattern1, pattern2)) {
-////			// /* + /hotel -> /hotel ; "/*.*" + "/*.html" -> /*.html
-////			// However /user + /user -> /usr/user ; /{foo} + /bar -> /{foo}/bar
-////			return pattern2;
-////		}
-////
-//		// /hotels/* + /booking -> /hotels/booking
-//		// /hotels/* + booking -> /hotels/booking
-//		if (pattern1.endsWithSeparatorWildcard()) {
-//			return concat(Character.toString(pattern1.getSeparator()),pattern1string.substring(0,pattern1string.length()-2),pattern2string);
-//		}
-////		if (pattern1.endsWith(this.pathSeparatorPatternCache.getEndsOnWildCard())) {
-////			return concat(pattern1.substring(0, pattern1.length() - 2), pattern2);
-////		}
-////
-//		// no need to support this
-////		// /hotels/** + /booking -> /hotels/**/booking
-////		// /hotels/** + booking -> /hotels/**/booking
-////		if (pattern1.endsWith(this.pathSeparatorPatternCache.getEndsOnDoubleWildCard())) {
-////			return concat(pattern1, pattern2);
-////		}
-////
-//		
-//		int starDotPos1 = pattern1string.indexOf("*."); // TODO what is this asking?
-//		if (pattern1containsUriVar || starDotPos1 == -1 || pattern1.getSeparator()=='.') {
-//			// simply concatenate the two patterns
-//			return concat(Character.toString(pattern1.getSeparator()),pattern1string, pattern2string);			
-//		}
-//		
-////		int starDotPos1 = pattern1.indexOf("*.");
-////		if (pattern1ContainsUriVar || starDotPos1 == -1 || this.pathSeparator.equals(".")) {
-////			// simply concatenate the two patterns
-////			return concat(pattern1, pattern2);
-////		}
-//		
-//		
-//		String ext1 = pattern1string.substring(starDotPos1+1); // looking for the first extension
-//		int dotPos2 = pattern2string.indexOf('.');
-//		String file2 = (dotPos2==-1?pattern2string:pattern2string.substring(0,dotPos2));// TODO What about multiple dots?
-//		String ext2 = (dotPos2 == -1?"":pattern2string.substring(dotPos2));
-//		boolean ext1All = (ext1.equals(".*") || ext1.equals(""));
-//		boolean ext2All = (ext2.equals(".*") || ext2.equals(""));
-//		if (!ext1All && !ext2All) {
-//			throw new IllegalArgumentException("Cannot combine patterns: " + pattern1string + " vs " + pattern2string);
-//		}
-//		String ext = (ext1All ?ext2:ext1);
-//		return file2+ext;
-//		
-////		String ext1 = pattern1.substring(starDotPos1 + 1);
-////		int dotPos2 = pattern2.indexOf('.');
-////		String file2 = (dotPos2 == -1 ? pattern2 : pattern2.substring(0, dotPos2));
-////		String ext2 = (dotPos2 == -1 ? "" : pattern2.substring(dotPos2));
-////		boolean ext1All = (ext1.equals(".*") || ext1.equals(""));
-////		boolean ext2All = (ext2.equals(".*") || ext2.equals(""));
-////		if (!ext1All && !ext2All) {
-////			throw new IllegalArgumentException("Cannot combine patterns: " + pattern1 + " vs " + pattern2);
-////		}
-////		String ext = (ext1All ? ext2 : ext1);
-////		return file2 + ext;
-////	}
-//// }
-//	}
-//
-//	private String concat(String separator, String path1, String path2) {
-//		boolean path1EndsWithSeparator = path1.endsWith(separator);
-//		boolean path2StartsWithSeparator = path2.startsWith(separator);
-//
-//		if (path1EndsWithSeparator && path2StartsWithSeparator) {
-//			return path1 + path2.substring(1);
-//		}
-//		else if (path1EndsWithSeparator || path2StartsWithSeparator) {
-//			return path1 + path2;
-//		}
-//		else {
-//			return path1 + separator + path2;
-//		}
-//	}
-//
-//}
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Combine patterns according to some basic rules, producing a new {@link PathPattern}. The rules
+ * are the same as {@link PathPattern#combine(String)} but rather than building a string that then
+ * has to be parsed, copies of the path elements of the two patterns are joined into a new chain.
+ * Only the file extension merge (e.g. {@code /*.html} with {@code /hotel}), which rewrites the text
+ * inside a segment, and combining patterns that differ in case sensitivity parse the combined text.
+ * <p>
+ * The same pairs tend to be combined over and over (e.g. a type level pattern with each of its
+ * method level patterns, for every request) so a PatternCombiner remembers a bounded number of
+ * results, least recently used first out. Pairs are the same if their patterns are equal and were
+ * parsed with the same options.
+ * <h3>Examples</h3>
+ * <table border="1">
+ * <tr><th>Pattern 1</th><th>Pattern 2</th><th>Result</th></tr>
+ * <tr><td>/hotels</td><td>&nbsp;</td><td>/hotels</td></tr>
+ * <tr><td>&nbsp;</td><td>/hotels</td><td>/hotels</td></tr>
+ * <tr><td>/hotels</td><td>/bookings</td><td>/hotels/bookings</td></tr>
+ * <tr><td>/hotels</td><td>bookings</td><td>/hotels/bookings</td></tr>
+ * <tr><td>/hotels/*</td><td>/bookings</td><td>/hotels/bookings</td></tr>
+ * <tr><td>/hotels/&#42;&#42;</td><td>/bookings</td><td>/hotels/&#42;&#42;/bookings</td></tr>
+ * <tr><td>/hotels</td><td>{hotel}</td><td>/hotels/{hotel}</td></tr>
+ * <tr><td>/hotels/*</td><td>{hotel}</td><td>/hotels/{hotel}</td></tr>
+ * <tr><td>/hotels/&#42;&#42;</td><td>{hotel}</td><td>/hotels/&#42;&#42;/{hotel}</td></tr>
+ * <tr><td>/*.html</td><td>/hotels.html</td><td>/hotels.html</td></tr>
+ * <tr><td>/*.html</td><td>/hotels</td><td>/hotels.html</td></tr>
+ * <tr><td>/*.html</td><td>/*.txt</td><td>{@code IllegalArgumentException}</td></tr>
+ * </table>
+ *
+ * @author Andy Clement
+ */
+public class PatternCombiner {
+
+	private final ConcurrentLruCache<PatternPair, PathPattern> combinedPatterns;
+
+	/**
+	 * @param sizeLimit the maximum number of combined patterns to remember
+	 * @throws IllegalArgumentException if the size limit is not positive
+	 */
+	public PatternCombiner(int sizeLimit) {
+		this.combinedPatterns = new ConcurrentLruCache<>(sizeLimit,
+				pair -> combinePatterns(pair.pattern1, pair.pattern2));
+	}
+
+	/**
+	 * Combine two patterns into a new pattern, or return the result of combining an equal pair earlier.
+	 * @param pattern1 the first pattern
+	 * @param pattern2 the second pattern
+	 * @return the combination of the two patterns
+	 * @throws IllegalArgumentException if the two patterns cannot be combined
+	 * @throws PatternParseException if the combination is not a valid pattern, for example because
+	 * both patterns capture a variable with the same name
+	 */
+	public PathPattern combine(PathPattern pattern1, PathPattern pattern2) {
+		if (pattern1.getSeparator() != pattern2.getSeparator()) {
+			throw new IllegalArgumentException("Patterns using different separators cannot be combined");
+		}
+		return combinedPatterns.get(new PatternPair(pattern1, pattern2));
+	}
+
+	/**
+	 * @return the number of combined patterns currently remembered
+	 */
+	public int size() {
+		return combinedPatterns.size();
+	}
+
+	public int getSizeLimit() {
+		return combinedPatterns.sizeLimit();
+	}
+
+	/**
+	 * @return how many combinations were answered from previous results
+	 */
+	public long getHitCount() {
+		return combinedPatterns.hitCount();
+	}
+
+	/**
+	 * @return how many combinations had to be computed
+	 */
+	public long getMissCount() {
+		return combinedPatterns.missCount();
+	}
+
+	/**
+	 * @return how many combined patterns were dropped to stay within the size limit
+	 */
+	public long getEvictionCount() {
+		return combinedPatterns.evictionCount();
+	}
+
+	/**
+	 * Forget all the combined patterns, the statistics are kept.
+	 */
+	public void clear() {
+		combinedPatterns.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "PatternCombiner(size=" + size() + ",sizeLimit=" + getSizeLimit() + ",hits=" + getHitCount()
+				+ ",misses=" + getMissCount() + ",evictions=" + getEvictionCount() + ")";
+	}
+
+	/**
+	 * Combine two patterns without remembering the result, see {@link PathPattern#combine(PathPattern)}.
+	 */
+	static PathPattern combinePatterns(PathPattern pattern1, PathPattern pattern2) {
+		if (pattern1.getSeparator() != pattern2.getSeparator()) {
+			throw new IllegalArgumentException("Patterns using different separators cannot be combined");
+		}
+		String patternString1 = pattern1.getPatternString();
+		String patternString2 = pattern2.getPatternString();
+		if (patternString1.length() == 0) {
+			return pattern2;
+		} else if (patternString2.length() == 0) {
+			return pattern1;
+		}
+
+		// /* + /hotel => /hotel
+		// /*.* + /*.html => /*.html
+		if (!patternString1.equals(patternString2) && pattern1.getCapturedVariableCount() == 0
+				&& pattern1.matches(patternString2)) {
+			return pattern2;
+		}
+
+		// The elements of pattern2 are copied as they are so must have been parsed the same way
+		if (pattern1.isCaseSensitive() != pattern2.isCaseSensitive()) {
+			return createParser(pattern1, pattern2).parse(pattern1.combine(patternString2));
+		}
+
+		// /hotels/* + /booking => /hotels/booking
+		// /hotels/* + booking => /hotels/booking
+		// The trailing wildcard is dropped but its separator is kept, the join then removes the duplicate
+		PathElement last1 = pattern1.getHeadSection();
+		while (last1.next != null) {
+			last1 = last1.next;
+		}
+		if (pattern1.endsWithSeparatorWildcard) {
+			PathElement separator1 = pattern1.getHeadSection();
+			while (separator1.next != last1) {
+				separator1 = separator1.next;
+			}
+			return join(pattern1, separator1, pattern2);
+		}
+
+		// /*.html + /hotel => /hotel.html
+		// This rewrites the text of the last segment so defer to the string version and parse the result
+		if (pattern1.getCapturedVariableCount() == 0 && patternString1.contains("*.")
+				&& pattern1.getSeparator() != '.') {
+			return createParser(pattern1, pattern2).parse(pattern1.combine(patternString2));
+		}
+
+		// /hotels + /booking => /hotels/booking
+		// /hotels + booking => /hotels/booking
+		return join(pattern1, last1, pattern2);
+	}
+
+	/**
+	 * Build the pattern made from the elements of pattern1, up to and including last1, followed by the
+	 * elements of pattern2, with exactly one separator where they meet. The elements are copied to
+	 * their position in the combined pattern rather than created again from their text.
+	 */
+	private static PathPattern join(PathPattern pattern1, PathElement last1, PathPattern pattern2) {
+		char separator = pattern1.getSeparator();
+		String patternString2 = pattern2.getPatternString();
+		int end1 = (last1.next == null ? pattern1.getPatternString().length() : last1.next.pos);
+		PathElement first2 = pattern2.getHeadSection();
+		boolean addSeparator = false;
+		StringBuilder combined = new StringBuilder(end1 + patternString2.length() + 1);
+		combined.append(pattern1.getPatternString(), 0, end1);
+		if (last1 instanceof SeparatorPathElement) {
+			if (first2 instanceof SeparatorPathElement) {
+				first2 = first2.next;
+			}
+		} else if (!(first2 instanceof SeparatorPathElement)) {
+			addSeparator = true;
+			combined.append(separator);
+		}
+		// How far the elements of pattern2 move
+		int shift2 = combined.length() - (first2 == null ? 0 : first2.pos);
+		if (first2 != null) {
+			combined.append(patternString2, first2.pos, patternString2.length());
+		}
+
+		ChainBuilder chain = new ChainBuilder(combined.toString());
+		for (PathElement pe = pattern1.getHeadSection(); pe != last1.next; pe = pe.next) {
+			chain.add(pe, pe.pos);
+		}
+		if (addSeparator) {
+			chain.add(new SeparatorPathElement(end1, separator), end1);
+		}
+		for (PathElement pe = first2; pe != null; pe = pe.next) {
+			chain.add(pe, pe.pos + shift2);
+		}
+		PathPattern pathPattern = new PathPattern(chain.patternString, chain.head, separator,
+				pattern1.isCaseSensitive(), pattern1.isConstraintChecksDeferred() || pattern2.isConstraintChecksDeferred());
+		if (pattern1.isCompiled()) {
+			pathPattern.compile();
+		}
+		return pathPattern;
+	}
+
+	/**
+	 * @return a parser configured to parse the combination of the two patterns
+	 */
+	private static PathPatternParser createParser(PathPattern pattern1, PathPattern pattern2) {
+		PathPatternParser parser = new PathPatternParser(pattern1.getSeparator());
+		parser.setCaseSensitive(pattern1.isCaseSensitive());
+		parser.setCompileMatchers(pattern1.isCompiled());
+		parser.setDeferConstraintChecks(pattern1.isConstraintChecksDeferred() || pattern2.isConstraintChecksDeferred());
+		return parser;
+	}
+
+	/**
+	 * Builds a chain from copies of existing path elements, checking it as the parser would.
+	 */
+	private static final class ChainBuilder {
+
+		final String patternString;
+
+		PathElement head;
+
+		private PathElement current;
+
+		private int captureSlot;
+
+		private Set<String> variableNames;
+
+		ChainBuilder(String patternString) {
+			this.patternString = patternString;
+		}
+
+		/**
+		 * Append a copy of the element at the specified position in the pattern.
+		 */
+		void add(PathElement pathElement, int pos) {
+			if (current instanceof CaptureTheRestPathElement) {
+				throw new PatternParseException(pos, patternString.toCharArray(),
+						PatternMessage.NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST);
+			}
+			PathElement pe = pathElement.copy(pos, captureSlot);
+			if (pe.getCaptureCount() != 0) {
+				recordCapturedVariables(pe);
+				captureSlot += pe.getCaptureCount();
+			}
+			if (head == null) {
+				head = pe;
+			} else {
+				current.next = pe;
+			}
+			current = pe;
+		}
+
+		private void recordCapturedVariables(PathElement pe) {
+			if (variableNames == null) {
+				variableNames = new HashSet<>();
+			}
+			List<String> names;
+			if (pe instanceof CaptureVariablePathElement) {
+				names = Collections.singletonList(((CaptureVariablePathElement) pe).getVariableName());
+			} else if (pe instanceof CaptureTheRestPathElement) {
+				names = Collections.singletonList(((CaptureTheRestPathElement) pe).getVariableName());
+			} else {
+				names = ((RegexPathElement) pe).getVariableNames();
+			}
+			for (String variableName : names) {
+				if (!variableNames.add(variableName)) {
+					throw new PatternParseException(pe.pos, patternString.toCharArray(),
+							PatternMessage.ILLEGAL_DOUBLE_CAPTURE, variableName);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Two patterns to combine. Equal pairs produce equal results, so as well as the patterns being
+	 * equal the options used to parse them, which are not considered by {@link PathPattern#equals(Object)}
+	 * but are carried into the result, must be the same.
+	 */
+	private static final class PatternPair {
+
+		private final PathPattern pattern1;
+
+		private final PathPattern pattern2;
+
+		// Whether each pattern is compiled and whether it defers its constraint checks
+		private final int options;
+
+		PatternPair(PathPattern pattern1, PathPattern pattern2) {
+			this.pattern1 = pattern1;
+			this.pattern2 = pattern2;
+			this.options = (pattern1.isCompiled() ? 1 : 0) | (pattern1.isConstraintChecksDeferred() ? 2 : 0)
+					| (pattern2.isCompiled() ? 4 : 0) | (pattern2.isConstraintChecksDeferred() ? 8 : 0);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof PatternPair)) {
+				return false;
+			}
+			PatternPair that = (PatternPair) other;
+			return pattern1.equals(that.pattern1) && pattern2.equals(that.pattern2) && options == that.options;
+		}
+
+		@Override
+		public int hashCode() {
+			return (pattern1.hashCode() * 31 + pattern2.hashCode()) * 31 + options;
+		}
+
+	}
+
+}
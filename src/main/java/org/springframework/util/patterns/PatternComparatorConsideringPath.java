@@ -19,7 +19,9 @@ import java.util.Comparator;
 
 /**
  * Similar to {@link PathPatternComparator} but this takes account of a specified path and
- * sorts anything that exactly matches it to be first.
+ * sorts anything that exactly matches it to be first. When sorting many patterns for a path,
+ * {@link PathPatterns#sort(java.util.List, String)} gives the same order without checking the
+ * path against the patterns on every comparison.
  * 
  * @author Andy Clement
  */
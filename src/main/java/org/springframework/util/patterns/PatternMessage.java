@@ -34,7 +34,8 @@ public enum PatternMessage {
 	NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST("No more pattern data allowed after '{*...}' pattern element"),
 	BADLY_FORMED_CAPTURE_THE_REST("Expected form when capturing the rest of the path is simply '{*...}'"),
 	MISSING_REGEX_CONSTRAINT("Missing regex constraint on capture"),
-	ILLEGAL_DOUBLE_CAPTURE("Not allowed to capture ''{0}'' twice in the same pattern");
+	ILLEGAL_DOUBLE_CAPTURE("Not allowed to capture ''{0}'' twice in the same pattern"),
+	REGEX_PATTERN_SYNTAX_EXCEPTION("Exception occurred in regex pattern compilation: {0}");
 	// @formatter:on
 
 	private final String message;
@@ -30,29 +30,83 @@ import org.springframework.util.patterns.PathPattern.MatchingContext;
  */
 class RegexPathElement extends PathElement {
 
-	private final java.util.regex.Pattern GLOB_PATTERN = java.util.regex.Pattern
+	private static final java.util.regex.Pattern GLOB_PATTERN = java.util.regex.Pattern
 			.compile("\\?|\\*|\\{((?:\\{[^/]+?\\}|[^/{}]|\\\\[{}])+?)\\}");
 
-	private final String DEFAULT_VARIABLE_PATTERN = "(.*)";
+	private static final String DEFAULT_VARIABLE_PATTERN = "(.*)";
 
-	private final List<String> variableNames = new LinkedList<>();
+	private final List<String> variableNames;
 
 	private char[] regex;
 
-	private java.util.regex.Pattern pattern;
+	// Compiled when first needed if the element was loaded from a snapshot, see pattern()
+	private volatile java.util.regex.Pattern pattern;
 
 	private boolean caseSensitive;
 
 	private int wildcardCount;
 
-	RegexPathElement(int pos, char[] regex, boolean caseSensitive) {
+	// Index, amongst those captured by the pattern, of the first variable captured by this element
+	private final int firstCaptureSlot;
+
+	RegexPathElement(int pos, char[] regex, boolean caseSensitive, int firstCaptureSlot, PathPatternInterner interner) {
+		super(pos);
+		this.variableNames = new LinkedList<>();
+		this.regex = interner.intern(regex);
+		this.caseSensitive = caseSensitive;
+		this.firstCaptureSlot = firstCaptureSlot;
+		this.pattern = interner.compile(buildPattern(true), caseSensitive);
+	}
+
+	/**
+	 * Create the element from what is saved in a {@link PathPatternSnapshot}. The text was valid
+	 * when it was saved so it is not converted to a regex and compiled until first needed.
+	 * @param variableNames the names of the variables captured by the element, in order
+	 * @param wildcardCount the number of '*' wildcards in the element
+	 */
+	RegexPathElement(int pos, char[] regex, boolean caseSensitive, int firstCaptureSlot, List<String> variableNames,
+			int wildcardCount) {
 		super(pos);
+		this.variableNames = variableNames;
 		this.regex = regex;
 		this.caseSensitive = caseSensitive;
-		buildPattern(regex);
+		this.firstCaptureSlot = firstCaptureSlot;
+		this.wildcardCount = wildcardCount;
 	}
 
-	public void buildPattern(char[] regex) {
+	private RegexPathElement(int pos, RegexPathElement original, int firstCaptureSlot) {
+		super(pos);
+		this.variableNames = original.variableNames;
+		this.regex = original.regex;
+		this.pattern = original.pattern;
+		this.caseSensitive = original.caseSensitive;
+		this.firstCaptureSlot = firstCaptureSlot;
+		this.wildcardCount = original.wildcardCount;
+	}
+
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new RegexPathElement(pos, this, captureSlot);
+	}
+
+	/**
+	 * @return the compiled regex, building and compiling it now if the element was loaded from a
+	 * snapshot. Threads that race to compile it each compile the same regex, any result can be kept.
+	 */
+	private java.util.regex.Pattern pattern() {
+		java.util.regex.Pattern pattern = this.pattern;
+		if (pattern == null) {
+			pattern = PathPatternInterner.NONE.compile(buildPattern(false), caseSensitive);
+			this.pattern = pattern;
+		}
+		return pattern;
+	}
+
+	/**
+	 * @param recordVariables true to record the variable names and wildcard count as the text is processed
+	 * @return the regex for the text of the element
+	 */
+	private String buildPattern(boolean recordVariables) {
 		StringBuilder patternBuilder = new StringBuilder();
 		String text = new String(regex);
 		Matcher matcher = GLOB_PATTERN.matcher(text);
@@ -64,40 +118,38 @@ class RegexPathElement extends PathElement {
 				patternBuilder.append('.');
 			} else if ("*".equals(match)) {
 				patternBuilder.append(".*");
-				wildcardCount++;
+				if (recordVariables) {
+					wildcardCount++;
+				}
 			} else if (match.startsWith("{") && match.endsWith("}")) {
 				int colonIdx = match.indexOf(':');
 				if (colonIdx == -1) {
 					patternBuilder.append(DEFAULT_VARIABLE_PATTERN);
-					String variableName = matcher.group(1);
-					if (variableNames.contains(variableName)) {
-						throw new PatternParseException(pos, regex, PatternMessage.ILLEGAL_DOUBLE_CAPTURE,
-								variableName);
+					if (recordVariables) {
+						recordVariable(matcher.group(1));
 					}
-					this.variableNames.add(variableName);
 				} else {
 					String variablePattern = match.substring(colonIdx + 1, match.length() - 1);
 					patternBuilder.append('(');
 					patternBuilder.append(variablePattern);
 					patternBuilder.append(')');
-					String variableName = match.substring(1, colonIdx);
-					if (variableNames.contains(variableName)) {
-						throw new PatternParseException(pos, regex, PatternMessage.ILLEGAL_DOUBLE_CAPTURE,
-								variableName);
+					if (recordVariables) {
+						recordVariable(match.substring(1, colonIdx));
 					}
-					this.variableNames.add(variableName);
 				}
 			}
 			end = matcher.end();
 		}
 		patternBuilder.append(quote(text, end, text.length()));
 		// if (DEBUG) System.out.println("Pattern out: "+patternBuilder.toString());
-		if (caseSensitive) {
-			pattern = java.util.regex.Pattern.compile(patternBuilder.toString());
-		} else {
-			pattern = java.util.regex.Pattern.compile(patternBuilder.toString(),
-					java.util.regex.Pattern.CASE_INSENSITIVE);
+		return patternBuilder.toString();
+	}
+
+	private void recordVariable(String variableName) {
+		if (variableNames.contains(variableName)) {
+			throw new PatternParseException(pos, regex, PatternMessage.ILLEGAL_DOUBLE_CAPTURE, variableName);
 		}
+		this.variableNames.add(variableName);
 	}
 
 	public List<String> getVariableNames() {
@@ -114,7 +166,8 @@ class RegexPathElement extends PathElement {
 	@Override
 	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
 		int p = matchingContext.scanAhead(candidateIndex);
-		Matcher m = pattern.matcher(new SubSequence(matchingContext.candidate, candidateIndex, p));
+		java.util.regex.Pattern pattern = pattern();
+		Matcher m = matchingContext.matcher(pattern, matchingContext.window(candidateIndex, p));
 		boolean matches = m.matches();
 		if (matches) {
 			if (next == null) {
@@ -133,26 +186,25 @@ class RegexPathElement extends PathElement {
 			}
 		}
 		if (matches && matchingContext.extractingVariables) {
+			// The window and matcher are shared within the context and may have been used by later
+			// path elements, so match again before processing captures
+			m = matchingContext.matcher(pattern, matchingContext.window(candidateIndex, p));
+			m.matches();
 			// Process captures
 			// if (somethingMatched && !matchingContext.matchStart) {
 			// // TODO
 			if (this.variableNames.size() != m.groupCount()) { // SPR-8455
 				throw new IllegalArgumentException("The number of capturing groups in the pattern segment "
-						+ this.pattern + " does not match the number of URI template variables it defines, "
+						+ pattern + " does not match the number of URI template variables it defines, "
 						+ "which can occur if capturing groups are used in a URI template regex. "
 						+ "Use non-capturing groups instead.");
 			}
 			for (int i = 1; i <= m.groupCount(); i++) {
-				String name = this.variableNames.get(i - 1);
-				String value = m.group(i);
-				System.out.println("Found " + name + " = " + value);
-				matchingContext.set(name, value);
-				// uriTemplateVariables.put(name, value);
+				// Groups that did not participate in the match are recorded as -1
+				int start = m.start(i);
+				matchingContext.capture(firstCaptureSlot + i - 1,
+						(start == -1 ? -1 : candidateIndex + start), (start == -1 ? -1 : candidateIndex + m.end(i)));
 			}
-			// // Need to do capture - TODO less object creation please
-			//// matchingContext.set(key,matchingContext.candidateText.substring(candidateIndex,
-			// matchingContext.separatorPositions[sn]));
-			// }
 		}
 		return matches;
 	}
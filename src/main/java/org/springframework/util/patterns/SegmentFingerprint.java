@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+/**
+ * A one word bloom filter of path segments. Each segment sets one of 64 bits, chosen by a hash
+ * of its lower cased text. The fingerprint of a pattern has the bits for the literal segments it
+ * requires, the fingerprint of a candidate has the bits for all of its segments. If a pattern
+ * fingerprint has a bit the candidate fingerprint does not then one of the literal segments is
+ * missing from the candidate and it cannot match. Matching bits prove nothing, the full match
+ * still has to run.
+ *
+ * @author Andy Clement
+ */
+final class SegmentFingerprint {
+
+	private SegmentFingerprint() {
+	}
+
+	/**
+	 * @param head the first element of a parsed pattern
+	 * @return the fingerprint of the literal segments in the pattern
+	 */
+	static long forPattern(PathElement head) {
+		long fingerprint = 0;
+		for (PathElement pe = head; pe != null; pe = pe.next) {
+			// Literal elements are always a complete segment
+			if (pe instanceof LiteralPathElement) {
+				fingerprint |= bit(pe.getText());
+			}
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Add a character to the hash of a candidate segment, a segment with no characters has a hash of 0.
+	 * Candidates are hashed as they are tokenized, see {@link TokenizedPath}.
+	 * @param hash the hash of the segment so far
+	 * @param ch the next character of the segment
+	 * @return the hash including that character
+	 */
+	static long hash(long hash, char ch) {
+		return 31 * hash + PathElement.toLowerCase(ch);
+	}
+
+	/**
+	 * @param hash the hash of a complete segment
+	 * @return the fingerprint bit for the segment
+	 */
+	static long bit(long hash) {
+		// Fibonacci hashing, the top six bits select the bit
+		return 1L << ((hash * 0x9E3779B97F4A7C15L) >>> 58);
+	}
+
+	private static long bit(String text) {
+		long hash = 0;
+		for (int i = 0; i < text.length(); i++) {
+			hash = hash(hash, text.charAt(i));
+		}
+		return bit(hash);
+	}
+
+}
@@ -41,7 +41,7 @@ class SeparatorPathElement extends PathElement {
 	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
 		boolean matched = false;
 		if (candidateIndex < matchingContext.candidateLength) {
-			if (matchingContext.candidate[candidateIndex] == separator) {
+			if (matchingContext.candidate.charAt(candidateIndex) == separator) {
 				if (next == null) {
 					matched = ((candidateIndex + 1) == matchingContext.candidateLength);
 				} else {
@@ -56,6 +56,11 @@ class SeparatorPathElement extends PathElement {
 		return matched;
 	}
 
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new SeparatorPathElement(pos, separator);
+	}
+
 	@Override
 	public String getText() {
 		return Character.toString(separator);
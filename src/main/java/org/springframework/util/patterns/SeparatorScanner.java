@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+/**
+ * Finds the next separator in a candidate path, using the fastest approach available for the
+ * kind of CharSequence the path is. Long segments (e.g. opaque ids or storage keys several
+ * hundred characters long) are where this matters:
+ * <ul>
+ * <li>{@link String} uses {@link String#indexOf(int, int)}, which the JVM treats as an intrinsic and
+ * checks many characters per instruction on current hardware
+ * <li>{@link ByteSequence} checks 8 bytes at a time using SWAR (SIMD within a register) on longs
+ * <li>{@link TokenizedPath} already knows where its separators are
+ * <li>anything else is scanned a char at a time
+ * </ul>
+ *
+ * @author Andy Clement
+ */
+final class SeparatorScanner {
+
+	private SeparatorScanner() {
+	}
+
+	/**
+	 * @param path the candidate path
+	 * @param separator the separator to look for
+	 * @param from the position to start looking from
+	 * @return the position of the first separator at or after from, or the length of the path if there isn't one
+	 */
+	static int scan(CharSequence path, char separator, int from) {
+		if (path instanceof String) {
+			int index = ((String) path).indexOf(separator, from);
+			return (index == -1 ? path.length() : index);
+		} else if (path instanceof ByteSequence) {
+			return ((ByteSequence) path).indexOf(separator, from);
+		} else if (path instanceof TokenizedPath && ((TokenizedPath) path).getSeparator() == separator) {
+			return ((TokenizedPath) path).nextSeparator(from);
+		}
+		int length = path.length();
+		for (int pos = from; pos < length; pos++) {
+			if (path.charAt(pos) == separator) {
+				return pos;
+			}
+		}
+		return length;
+	}
+
+}
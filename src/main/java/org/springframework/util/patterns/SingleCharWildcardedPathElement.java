@@ -48,16 +48,29 @@ class SingleCharWildcardedPathElement extends PathElement {
 		}
 	}
 	
+	private SingleCharWildcardedPathElement(int pos, SingleCharWildcardedPathElement original) {
+		super(pos);
+		this.text = original.text;
+		this.len = original.len;
+		this.questionMarkCount = original.questionMarkCount;
+		this.caseSensitive = original.caseSensitive;
+	}
+
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new SingleCharWildcardedPathElement(pos, this);
+	}
+
 	@Override
 	public boolean matches(int candidateIndex, MatchingContext matchingContext) {
 		if (matchingContext.candidateLength < (candidateIndex + len)) {
 			return false; // There isn't enough data to match
 		}
-		char[] candidate = matchingContext.candidate;
+		CharSequence candidate = matchingContext.candidate;
 		if (caseSensitive) {
 			for (int i = 0; i < len; i++) {
 				char t = text[i];
-				if (t != '?' && candidate[candidateIndex] != t) {
+				if (t != '?' && candidate.charAt(candidateIndex) != t) {
 					return false;
 				}
 				candidateIndex++;
@@ -65,7 +78,7 @@ class SingleCharWildcardedPathElement extends PathElement {
 		} else {
 			for (int i = 0; i < len; i++) {
 				char t = text[i];
-				if (t != '?' && Character.toLowerCase(candidate[candidateIndex]) != t) {
+				if (t != '?' && toLowerCase(candidate.charAt(candidateIndex)) != t) {
 					return false;
 				}
 				candidateIndex++;
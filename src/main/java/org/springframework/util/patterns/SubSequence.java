@@ -16,7 +16,7 @@
 package org.springframework.util.patterns;
 
 /**
- * Used to represent a subsection of an array, useful when wanting to pass that subset of data
+ * Used to represent a subsection of a character sequence, useful when wanting to pass that subset of data
  * to another method (e.g. a java regex matcher) but not wanting to create a new string object to hold
  * all that data.
  * 
@@ -24,10 +24,20 @@ package org.springframework.util.patterns;
  */
 class SubSequence implements CharSequence {
 
-	private char[] chars;
+	private CharSequence chars;
 	private int start, end;
 
-	SubSequence(char[] chars, int start, int end) {
+	SubSequence() {
+	}
+
+	SubSequence(CharSequence chars, int start, int end) {
+		reset(chars, start, end);
+	}
+
+	/**
+	 * Reposition this sequence, allowing one instance to be reused for many subsections.
+	 */
+	void reset(CharSequence chars, int start, int end) {
 		this.chars = chars;
 		this.start = start;
 		this.end = end;
@@ -40,7 +50,7 @@ class SubSequence implements CharSequence {
 
 	@Override
 	public char charAt(int index) {
-		return chars[start + index];
+		return chars.charAt(start + index);
 	}
 
 	@Override
@@ -49,7 +59,7 @@ class SubSequence implements CharSequence {
 	}
 	
 	public String toString() {
-		return new String(chars,start,end-start);
+		return chars.subSequence(start, end).toString();
 	}
 
 }
\ No newline at end of file
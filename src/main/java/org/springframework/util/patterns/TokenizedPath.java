@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import java.util.Arrays;
+
+/**
+ * A candidate path that has been scanned once for its separators. When a path is going to be
+ * matched against many patterns, wrapping it in a TokenizedPath means the separator positions
+ * are found a single time and then shared by every match attempt: path elements locate the end
+ * of a segment with a lookup instead of rescanning the characters. A TokenizedPath is a
+ * CharSequence so it can be passed to any of the {@link PathPattern} matching methods, the
+ * separator positions are used by patterns that were parsed with the same separator.
+ * <pre class="code">
+ * TokenizedPath path = new TokenizedPath(requestPath, '/');
+ * for (PathPattern pattern : patterns) {
+ *     if (pattern.matches(path, matchingContext)) {
+ *         ...
+ * </pre>
+ *
+ * @author Andy Clement
+ */
+public final class TokenizedPath implements CharSequence {
+
+	private static final int[] NO_SEPARATORS = new int[0];
+
+	private final CharSequence path;
+
+	private final char separator;
+
+	// Positions of the separators in the path, in ascending order
+	private final int[] separatorPositions;
+
+	// Which literal segments the path could contain, see SegmentFingerprint
+	private final long fingerprint;
+
+	/**
+	 * @param path the path to tokenize
+	 * @param separator the separator between segments of the path
+	 */
+	public TokenizedPath(CharSequence path, char separator) {
+		this.path = path;
+		this.separator = separator;
+		int length = path.length();
+		int[] positions = NO_SEPARATORS;
+		int count = 0;
+		// One pass finds the separators and hashes the segments between them
+		long fingerprint = 0;
+		long hash = 0;
+		int segmentStart = 0;
+		for (int i = 0; i < length; i++) {
+			char ch = path.charAt(i);
+			if (ch == separator) {
+				if (count == positions.length) {
+					positions = Arrays.copyOf(positions, count == 0 ? 8 : count * 2);
+				}
+				positions[count++] = i;
+				if (i > segmentStart) {
+					fingerprint |= SegmentFingerprint.bit(hash);
+				}
+				hash = 0;
+				segmentStart = i + 1;
+			} else {
+				hash = SegmentFingerprint.hash(hash, ch);
+			}
+		}
+		if (length > segmentStart) {
+			fingerprint |= SegmentFingerprint.bit(hash);
+		}
+		this.separatorPositions = (count == positions.length ? positions : Arrays.copyOf(positions, count));
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * @return the path that was tokenized
+	 */
+	public CharSequence getPath() {
+		return path;
+	}
+
+	public char getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @return how many separators are in the path
+	 */
+	public int getSeparatorCount() {
+		return separatorPositions.length;
+	}
+
+	/**
+	 * @param index the index of a separator, from 0 to {@link #getSeparatorCount()}-1
+	 * @return the position of that separator in the path
+	 */
+	public int getSeparatorPosition(int index) {
+		return separatorPositions[index];
+	}
+
+	/**
+	 * @param pos a position in the path
+	 * @return the position of the first separator at or after pos, or the length of the path if there isn't one
+	 */
+	public int nextSeparator(int pos) {
+		int[] positions = this.separatorPositions;
+		int low = 0;
+		int high = positions.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (positions[mid] < pos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return (low == positions.length ? path.length() : positions[low]);
+	}
+
+	/**
+	 * A fingerprint of the segments in the path. A pattern parsed with the same separator cannot
+	 * match the path if {@code (pattern.getLiteralFingerprint() & ~path.getLiteralFingerprint()) != 0},
+	 * the patterns check this themselves when they are given a TokenizedPath.
+	 * @return the fingerprint of the segments in the path
+	 */
+	public long getLiteralFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public int length() {
+		return path.length();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return path.charAt(index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return path.subSequence(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return path.toString();
+	}
+
+}
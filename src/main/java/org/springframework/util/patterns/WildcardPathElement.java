@@ -47,6 +47,11 @@ class WildcardPathElement extends PathElement {
 		}
 	}
 	
+	@Override
+	PathElement copy(int pos, int captureSlot) {
+		return new WildcardPathElement(pos);
+	}
+
 	@Override
 	public String getText() {
 		return "*";
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Exercise the {@link PathMatcherSourceGenerator} and {@link PathMatcherProcessor} by compiling
+ * the generated source and checking it matches the same paths as the parsed patterns.
+ *
+ * @author Andy Clement
+ */
+public class PathMatcherSourceGeneratorTests {
+
+	private static final List<String> PATTERNS = Arrays.asList("", "/", "/foo", "/foo/", "foo/bar", "/f?o/b?r",
+			"/foo/*", "/foo/*/boo", "/foo/{bar}", "/foo/{bar:[0-9]+}/x", "/foo/{class:\\d+|me}", "/foo/{*rest}",
+			"/customer/{id}.json", "/*.html", "/café/{id}", "/a\\b\"c/{d}");
+
+	private static final String[] PATHS = { "", "/", "//", "/foo", "/foo/", "foo/bar", "/fxo/bxr", "/foo/bar",
+			"/foo/123/x", "/foo/me", "/foo/zzz/boo", "/foo/a/b/c", "/customer/42.json", "/index.html", "/café/1",
+			"/CAFÉ/1", "/FOO/BAR", "/a\\b\"c/d", "/foo/ME" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private JavaCompiler compiler;
+
+	@Before
+	public void setup() {
+		compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+	}
+
+	@Test
+	public void generatedMatchesSameAsPatterns() throws Exception {
+		for (boolean caseSensitive : new boolean[] { true, false }) {
+			PathPatternParser parser = new PathPatternParser();
+			parser.setCaseSensitive(caseSensitive);
+			String source = new PathMatcherSourceGenerator(parser).generate("gen.Routes", PATTERNS);
+			File sourceFile = new File(folder.newFolder(), "gen/Routes.java");
+			sourceFile.getParentFile().mkdirs();
+			Files.write(sourceFile.toPath(), source.getBytes(StandardCharsets.UTF_8));
+			Class<?> routes = compile(sourceFile, "gen.Routes");
+			checkSameMatches(routes, parser);
+		}
+	}
+
+	@Test
+	public void capturesInFields() throws Exception {
+		String source = new PathMatcherSourceGenerator(new PathPatternParser()).generate("Routes",
+				Arrays.asList("/customer/{id}/orders/{order:[0-9]+}", "/{a}_{b}/{*rest}"));
+		File sourceFile = folder.newFile("Routes.java");
+		Files.write(sourceFile.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		Class<?> routes = compile(sourceFile, "Routes");
+		Object route = routes.getMethod("matchRoute0", String.class).invoke(null, "/customer/c1/orders/42");
+		assertEquals("c1", route.getClass().getField("id").get(route));
+		assertEquals("42", route.getClass().getField("order").get(route));
+		assertNull(routes.getMethod("matchRoute0", String.class).invoke(null, "/customer/c1/orders/x"));
+		// A regex segment uses a parsed pattern
+		route = routes.getMethod("matchRoute1", String.class).invoke(null, "/x_y/1/2");
+		assertEquals("x", route.getClass().getField("a").get(route));
+		assertEquals("y", route.getClass().getField("b").get(route));
+		assertEquals("1/2", route.getClass().getField("rest").get(route));
+		assertEquals(1, routes.getMethod("match", String.class).invoke(null, "/x_y/1/2"));
+		assertEquals(-1, routes.getMethod("match", String.class).invoke(null, "/x"));
+	}
+
+	@Test
+	public void keywordVariableNamesDoNotClash() throws Exception {
+		String source = new PathMatcherSourceGenerator(new PathPatternParser()).generate("Routes",
+				Arrays.asList("/{class}/{class_}/{class__}", "/{class_}/{class}_{int}"));
+		File sourceFile = folder.newFile("Routes.java");
+		Files.write(sourceFile.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		Class<?> routes = compile(sourceFile, "Routes");
+		Object route = routes.getMethod("matchRoute0", String.class).invoke(null, "/a/b/c");
+		assertEquals("a", route.getClass().getField("class___").get(route));
+		assertEquals("b", route.getClass().getField("class_").get(route));
+		assertEquals("c", route.getClass().getField("class__").get(route));
+		// Through a parsed pattern
+		route = routes.getMethod("matchRoute1", String.class).invoke(null, "/a/b_c");
+		assertEquals("a", route.getClass().getField("class_").get(route));
+		assertEquals("b", route.getClass().getField("class__").get(route));
+		assertEquals("c", route.getClass().getField("int_").get(route));
+		assertTrue((Boolean) routes.getMethod("matchesRoute1", String.class).invoke(null, "/a/b_c"));
+		assertFalse((Boolean) routes.getMethod("matchesRoute0", String.class).invoke(null, "/a/b"));
+	}
+
+	@Test
+	public void annotationProcessor() throws Exception {
+		File sourceDirectory = folder.newFolder();
+		File pkg = new File(sourceDirectory, "gen");
+		pkg.mkdirs();
+		Files.write(new File(pkg, "routes.txt").toPath(),
+				Arrays.asList("# Orders", "/orders/{id}", "", "/orders/{id}/items"));
+		File sourceFile = new File(pkg, "Routing.java");
+		Files.write(sourceFile.toPath(), Arrays.asList("package gen;",
+				"@org.springframework.util.patterns.GeneratePathMatcher(value = \"/customer/{id}\", patternFile = \"routes.txt\")",
+				"class Routing {", "}"));
+		Class<?> routes = compile(sourceFile, "gen.RoutingPathMatcher", "-processor",
+				PathMatcherProcessor.class.getName(), "-sourcepath", sourceDirectory.getPath());
+		Method match = routes.getMethod("match", String.class);
+		assertEquals(0, match.invoke(null, "/customer/1"));
+		assertEquals(1, match.invoke(null, "/orders/1"));
+		assertEquals(2, match.invoke(null, "/orders/1/items"));
+		assertEquals(-1, match.invoke(null, "/orders"));
+	}
+
+	private Class<?> compile(File sourceFile, String className, String... options) throws IOException, ClassNotFoundException {
+		File classes = folder.newFolder();
+		String classpath = new File(PathPattern.class.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath();
+		String[] arguments = new String[options.length + 7];
+		System.arraycopy(options, 0, arguments, 0, options.length);
+		System.arraycopy(new String[] { "-encoding", "UTF-8", "-classpath", classpath, "-d", classes.getPath(),
+				sourceFile.getPath() }, 0, arguments, options.length, 7);
+		assertEquals(0, compiler.run(null, null, null, arguments));
+		URLClassLoader loader = new URLClassLoader(new URL[] { classes.toURI().toURL() }, getClass().getClassLoader());
+		return loader.loadClass(className);
+	}
+
+	private void checkSameMatches(Class<?> routes, PathPatternParser parser) throws Exception {
+		Method match = routes.getMethod("match", String.class);
+		for (String path : PATHS) {
+			int expectedRoute = -1;
+			for (int i = 0; i < PATTERNS.size(); i++) {
+				PathPattern pathPattern = parser.parse(PATTERNS.get(i));
+				Object route = routes.getMethod("matchRoute" + i, String.class).invoke(null, path);
+				String message = pathPattern.getPatternString() + " against " + path;
+				assertEquals(message, pathPattern.matches(path), route != null);
+				assertEquals(message, route != null, routes.getMethod("matchesRoute" + i, String.class).invoke(null, path));
+				if (route != null) {
+					if (expectedRoute == -1) {
+						expectedRoute = i;
+					}
+					Map<String, String> variables = pathPattern.matchAndExtract(path);
+					for (Field field : route.getClass().getFields()) {
+						String name = field.getName().endsWith("_") ? field.getName().substring(0, field.getName().length() - 1)
+								: field.getName();
+						assertEquals(message, variables.get(name), field.get(route));
+					}
+					assertEquals(message, variables.size(), route.getClass().getFields().length);
+				}
+			}
+			assertEquals(path, expectedRoute, match.invoke(null, path));
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Exercise the {@link PathPatternAutomaton}.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternAutomatonTests {
+
+	private static final String[] PATTERNS = { "", "/", "/foo", "/foo/", "/foo/bar", "foo/bar", "/foo/{bar}",
+			"/foo/{bar}/boo", "/foo/*", "/foo/*/boo", "/f?o/bar", "/*/bar", "/foo/b*", "/foo/{bar:[0-9]+}",
+			"/foo/{*rest}", "/{*rest}", "/customer/{id}.json", "/customer/{id}/orders/{order}", "{id}",
+			"/foo/bar/**", "/*.html", "*", "/a?c/{x}", "/café/{x}" };
+
+	private static final String[] PATHS = { "", "/", "//", "/foo", "/foo/", "/foo/bar", "foo/bar", "/foo/123",
+			"/foo/bar/boo", "/foo/zzz/boo", "/fxo/bar", "/goo/bar", "/foo/baz", "/foo/a/b/c", "/customer/42.json",
+			"/customer/42/orders/7", "abc", "/foo/bar/**", "/index.html", "/FOO/BAR", "/a/c/d", "/abc/d",
+			"/café/latte", "/cafè/latte" };
+
+	@Test
+	public void basicMatching() {
+		PathPatternAutomaton automaton = build("/foo", "/foo/{bar}", "/foo/bar", "/foo/{*rest}");
+		assertEquals(0, automaton.getFallbackCount());
+		checkMatches(automaton, "/foo", "/foo");
+		checkMatches(automaton, "/foo/bar", "/foo/{bar}", "/foo/bar", "/foo/{*rest}");
+		checkMatches(automaton, "/foo/a/b", "/foo/{*rest}");
+		checkMatches(automaton, "/goo");
+	}
+
+	@Test
+	public void fallbacks() {
+		PathPatternAutomaton automaton = build("/foo/{bar:[0-9]+}", "/foo/*.html", "/foo/{bar}");
+		assertEquals(1, automaton.getFallbackCount());
+		checkMatches(automaton, "/foo/123", "/foo/{bar:[0-9]+}", "/foo/{bar}");
+		checkMatches(automaton, "/foo/a.html", "/foo/*.html", "/foo/{bar}");
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCaseSensitive(false);
+		automaton = new PathPatternAutomaton(Arrays.asList(pp.parse("/FOO"), new PathPatternParser().parse("/foo")));
+		assertEquals(1, automaton.getFallbackCount());
+		checkMatches(automaton, "/foo", "/FOO", "/foo");
+		checkMatches(automaton, "/Foo", "/FOO");
+	}
+
+	@Test
+	public void extractingVariables() {
+		PathPatternAutomaton automaton = build("/customer/{id}/orders/{order}", "/files/{*path}", "/?/{x}", "{id}");
+		PathPatternAutomaton.MatchResult result = automaton.match("/customer/42/orders/7");
+		assertEquals(1, result.getMatchingPatterns().size());
+		Map<String, String> variables = result.getExtractedVariables(result.getMatchingPatterns().get(0));
+		assertEquals("42", variables.get("id"));
+		assertEquals("7", variables.get("order"));
+		result = automaton.match("/files/a/b/c.txt");
+		assertEquals("a/b/c.txt", result.getExtractedVariables(result.getMatchingPatterns().get(0)).get("path"));
+		result = automaton.match("///abc");
+		assertEquals("abc", result.getExtractedVariables(result.getMatchingPatterns().get(0)).get("x"));
+		result = automaton.match("99");
+		assertEquals("99", result.getExtractedVariables(result.getMatchingPatterns().get(0)).get("id"));
+	}
+
+	@Test
+	public void extractingVariablesFromEqualPatterns() {
+		PathPatternParser pp = new PathPatternParser();
+		PathPattern first = pp.parse("/foo/{id}");
+		PathPattern second = pp.parse("/foo/{id}");
+		PathPattern regex = pp.parse("/foo/{id:\\d+}");
+		assertEquals(first, second);
+		PathPatternAutomaton automaton = new PathPatternAutomaton(Arrays.asList(first, regex, second));
+		PathPatternAutomaton.MatchResult result = automaton.match("/foo/42");
+		assertEquals(3, result.getMatchingPatterns().size());
+		assertSame(second, result.getMatchingPatterns().get(2));
+		for (int i = 0; i < 3; i++) {
+			assertEquals("42", result.getExtractedVariables(i).get("id"));
+			assertEquals("42", result.getExtractedVariables(result.getMatchingPatterns().get(i)).get("id"));
+		}
+	}
+
+	@Test
+	public void sameResultsAsMatchingEachPattern() {
+		PathPatternParser pp = new PathPatternParser();
+		List<PathPattern> patterns = new ArrayList<>();
+		for (String pattern : PATTERNS) {
+			patterns.add(pp.parse(pattern));
+		}
+		PathPatternAutomaton automaton = new PathPatternAutomaton(patterns);
+		for (String path : PATHS) {
+			List<PathPattern> expected = new ArrayList<>();
+			for (PathPattern pattern : patterns) {
+				if (pattern.matches(path)) {
+					expected.add(pattern);
+				}
+			}
+			PathPatternAutomaton.MatchResult result = automaton.match(path);
+			assertEquals("Wrong matches for " + path, expected, result.getMatchingPatterns());
+			for (PathPattern pattern : expected) {
+				assertEquals(pattern.matchAndExtract(path), result.getExtractedVariables(pattern));
+			}
+		}
+	}
+
+	// ---
+
+	private PathPatternAutomaton build(String... patterns) {
+		PathPatternParser pp = new PathPatternParser();
+		List<PathPattern> pathPatterns = new ArrayList<>();
+		for (String pattern : patterns) {
+			pathPatterns.add(pp.parse(pattern));
+		}
+		return new PathPatternAutomaton(pathPatterns);
+	}
+
+	private void checkMatches(PathPatternAutomaton automaton, String path, String... expectedPatterns) {
+		List<PathPattern> matches = automaton.findMatches(path);
+		assertEquals("Wrong matches for " + path + ": " + matches, expectedPatterns.length, matches.size());
+		for (int i = 0; i < expectedPatterns.length; i++) {
+			assertEquals(expectedPatterns[i], matches.get(i).getPatternString());
+		}
+	}
+
+}
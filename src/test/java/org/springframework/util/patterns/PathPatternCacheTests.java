@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Exercise the {@link PathPatternCache}.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternCacheTests {
+
+	@Test
+	public void hitsAndMisses() {
+		PathPatternCache cache = new PathPatternCache(10);
+		PathPattern p = cache.parse("/foo/{bar}");
+		assertTrue(p.matches("/foo/abc"));
+		assertSame(p, cache.parse("/foo/{bar}"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+
+		// Separator and case sensitivity are part of the key
+		PathPattern p2 = cache.parse("/foo/{bar}", '/', false);
+		assertNotSame(p, p2);
+		assertFalse(p2.isCaseSensitive());
+		PathPattern p3 = cache.parse("/foo/{bar}", '.', true);
+		assertEquals('.', p3.getSeparator());
+		assertEquals(3, cache.size());
+		assertEquals(3, cache.getMissCount());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNotSame(p, cache.parse("/foo/{bar}"));
+	}
+
+	@Test
+	public void parseFailuresAreNotCached() {
+		PathPatternCache cache = new PathPatternCache(10);
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.parse("/foo/{bar");
+				fail();
+			} catch (PatternParseException ppe) {
+				assertEquals(PatternMessage.MISSING_CLOSE_CAPTURE, ppe.getMessageType());
+			}
+		}
+		assertEquals(0, cache.size());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void leastRecentlyUsedIsEvicted() {
+		PathPatternCache cache = new PathPatternCache(3);
+		PathPattern a = cache.parse("/a");
+		cache.parse("/b");
+		cache.parse("/c");
+		// Use /a so /b is now the least recently used
+		assertSame(a, cache.parse("/a"));
+		cache.parse("/d");
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertSame(a, cache.parse("/a"));
+		long misses = cache.getMissCount();
+		cache.parse("/b");
+		assertEquals(misses + 1, cache.getMissCount());
+		assertEquals(2, cache.getEvictionCount());
+	}
+
+	@Test
+	public void useBeforeTheCacheIsFullCounts() {
+		PathPatternCache cache = new PathPatternCache(3);
+		PathPattern a = cache.parse("/a");
+		cache.parse("/b");
+		// Use /a before the cache fills up, /b is still the least recently used
+		assertSame(a, cache.parse("/a"));
+		cache.parse("/c");
+		cache.parse("/d");
+		assertEquals(1, cache.getEvictionCount());
+		assertSame(a, cache.parse("/a"));
+		long misses = cache.getMissCount();
+		cache.parse("/b");
+		assertEquals(misses + 1, cache.getMissCount());
+	}
+
+	@Test
+	public void hitsDoNotWaitForGeneration() throws Exception {
+		CountDownLatch generating = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+		ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(10, key -> {
+			if (key.equals("slow")) {
+				generating.countDown();
+				try {
+					finish.await();
+				} catch (InterruptedException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+			return key.toUpperCase();
+		});
+		assertEquals("FAST", cache.get("fast"));
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Future<String> slow = executor.submit(() -> cache.get("slow"));
+		generating.await();
+		// Another key hits and misses while the slow value is being generated
+		assertEquals("FAST", cache.get("fast"));
+		assertEquals("OTHER", cache.get("other"));
+		// Wanting the same key waits for the one generation
+		Future<String> waiting = executor.submit(() -> cache.get("slow"));
+		finish.countDown();
+		assertEquals("SLOW", slow.get());
+		assertEquals("SLOW", waiting.get());
+		executor.shutdown();
+		assertEquals(3, cache.missCount());
+		assertEquals(2, cache.hitCount());
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void waitingForAFailedGenerationIsNotAHit() throws Exception {
+		CountDownLatch generating = new CountDownLatch(1);
+		CountDownLatch fail = new CountDownLatch(1);
+		ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(10, key -> {
+			generating.countDown();
+			try {
+				fail.await();
+			} catch (InterruptedException ex) {
+				throw new IllegalStateException(ex);
+			}
+			throw new IllegalArgumentException(key);
+		});
+		List<Throwable> failures = new ArrayList<>();
+		Runnable lookup = () -> {
+			try {
+				cache.get("bad");
+			} catch (IllegalArgumentException ex) {
+				synchronized (failures) {
+					failures.add(ex);
+				}
+			}
+		};
+		Thread generator = new Thread(lookup);
+		generator.start();
+		generating.await();
+		Thread waiter = new Thread(lookup);
+		waiter.start();
+		// Let the second lookup start waiting for the first one's value
+		while (waiter.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		fail.countDown();
+		generator.join();
+		waiter.join();
+		assertEquals(2, failures.size());
+		assertEquals(0, cache.hitCount());
+		assertEquals(2, cache.missCount());
+		assertEquals(0, cache.size());
+		assertFalse(cache.contains("bad"));
+	}
+
+	@Test
+	public void concurrentUse() throws Exception {
+		PathPatternCache cache = new PathPatternCache(50);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			int seed = t;
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 2000; i++) {
+					int n = (i * 31 + seed) % 100;
+					PathPattern p = cache.parse("/foo/" + n + "/{id}");
+					assertTrue(p.matches("/foo/" + n + "/x"));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		assertEquals(8 * 2000, cache.getHitCount() + cache.getMissCount());
+		assertTrue(cache.size() <= 50);
+		assertEquals(cache.getMissCount() - cache.size(), cache.getEvictionCount());
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Exercise the matchers generated by the {@link PathPatternCompiler}.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternCompilerTests {
+
+	private static final String[] PATTERNS = { "/", "/foo", "/foo/", "/foo/bar", "foo/bar", "/foo/{bar}",
+			"/foo/{bar}/boo", "/foo/*", "/foo/*/boo", "/f?o/bar", "/*/bar", "/foo/{bar:[0-9]+}", "/foo/{*rest}",
+			"/{*rest}", "/customer/{id}/orders/{order}", "{id}", "*", "/a?c/{x}", "/fOo/BaR", "/café/{x}",
+			"/foo/{a:[a-z]+}/{b:[0-9]+}/{*c}", "/{a:[a-z]+}/x", "/{a:a.*}/{b:\\d+}" };
+
+	private static final String[] PATHS = { "", "/", "//", "/foo", "/foo/", "/foo/bar", "foo/bar", "/foo/123",
+			"/foo/bar/boo", "/foo/zzz/boo", "/fxo/bar", "/goo/bar", "/foo/baz", "/foo/a/b/c", "/customer/42/orders/7",
+			"/customer/42", "abc", "/FOO/BAR", "/a/c/d", "/abc/d", "/café/latte", "/CAFÉ/latte", "/foo/abc/123/x/y",
+			"/abc", "/abc/x", "/ABC/x", "/123/x", "/abc/12" };
+
+	@Test
+	public void compiledPatterns() {
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCompileMatchers(true);
+		assertTrue(pp.parse("/foo/{bar}").isCompiled());
+		assertTrue(pp.parse("/foo/{bar:[0-9]+}").isCompiled());
+		assertFalse(pp.parse("/foo/*.html").isCompiled());
+		assertFalse(pp.parse("").isCompiled());
+		assertFalse(new PathPatternParser().parse("/foo/{bar}").isCompiled());
+
+		PathPattern p = pp.parse("/customer/{id}/orders/{order}");
+		assertTrue(p.matches("/customer/42/orders/7"));
+		assertFalse(p.matches("/customer/42/orders"));
+		assertTrue(p.matchStart("/customer/42/orders"));
+		Map<String, String> variables = p.matchAndExtract("/customer/42/orders/7");
+		assertEquals("42", variables.get("id"));
+		assertEquals("7", variables.get("order"));
+	}
+
+	@Test
+	public void sameResultsAsChain() {
+		checkSameResultsAsChain(true, false);
+		checkSameResultsAsChain(false, false);
+	}
+
+	@Test
+	public void deferredConstraintChecks() {
+		checkSameResultsAsChain(true, true);
+		checkSameResultsAsChain(false, true);
+		PathPatternParser pp = new PathPatternParser();
+		pp.setDeferConstraintChecks(true);
+		PathPattern p = pp.parse("/foo/{a:[a-z]+}/{b:[0-9]+}");
+		assertTrue(p.matches("/foo/abc/123"));
+		assertFalse(p.matches("/foo/abc/12a"));
+		assertFalse(p.matches("/foo/ab1/123"));
+		assertTrue(p.matchStart("/foo/abc"));
+		assertFalse(p.matchStart("/foo/ab1"));
+		assertEquals("123", p.matchAndExtract("/foo/abc/123").get("b"));
+	}
+
+	// ---
+
+	/**
+	 * Compare results of a chain matched in the default way against the same pattern compiled and, if
+	 * deferring constraint checks, against a chain with the constraint checks deferred.
+	 */
+	private void checkSameResultsAsChain(boolean caseSensitive, boolean deferConstraintChecks) {
+		PathPatternParser parser = new PathPatternParser();
+		parser.setCaseSensitive(caseSensitive);
+		PathPatternParser deferringParser = new PathPatternParser();
+		deferringParser.setCaseSensitive(caseSensitive);
+		deferringParser.setDeferConstraintChecks(deferConstraintChecks);
+		PathPatternParser compilingParser = new PathPatternParser();
+		compilingParser.setCaseSensitive(caseSensitive);
+		compilingParser.setCompileMatchers(true);
+		compilingParser.setDeferConstraintChecks(deferConstraintChecks);
+		for (String pattern : PATTERNS) {
+			PathPattern p = parser.parse(pattern);
+			PathPattern deferring = deferringParser.parse(pattern);
+			PathPattern compiled = compilingParser.parse(pattern);
+			assertTrue(compiled.isCompiled());
+			for (String path : PATHS) {
+				String message = pattern + " against " + path + " (caseSensitive=" + caseSensitive + ")";
+				assertEquals(message, p.matches(path), compiled.matches(path));
+				assertEquals(message, p.matchStart(path), compiled.matchStart(path));
+				assertEquals(message, p.matchAndExtract(path), compiled.matchAndExtract(path));
+				assertEquals(message, p.matches(path), deferring.matches(path));
+				assertEquals(message, p.matchStart(path), deferring.matchStart(path));
+				assertEquals(message, p.matchAndExtract(path), deferring.matchAndExtract(path));
+			}
+		}
+	}
+
+}
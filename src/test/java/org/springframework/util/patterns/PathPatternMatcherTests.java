@@ -29,6 +29,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.springframework.util.patterns.PathPattern;
+import org.springframework.util.patterns.PathPattern.MatchingContext;
 import org.springframework.util.patterns.PatternComparatorConsideringPath;
 import org.springframework.util.patterns.PathPatternParser;
 
@@ -60,6 +61,244 @@ public class PathPatternMatcherTests {
 		checkNoMatch("/*/bar","/foo/baz");
 	}
 	
+	@Test
+	public void charSequenceCandidates() {
+		PathPattern p = new PathPatternParser().parse("/foo/{bar}/b?z/*");
+		StringBuilder path = new StringBuilder("/foo/abc/baz/x");
+		assertTrue(p.matches(path));
+		assertTrue(p.matchStart(path.subSequence(0, 8)));
+		assertEquals("abc", p.matchAndExtract(path).get("bar"));
+		path.setCharAt(11, 'Z');
+		assertFalse(p.matches(path));
+		assertTrue(p.matches(java.nio.CharBuffer.wrap("/foo/abc/bzz/x")));
+	}
+
+	@Test
+	public void byteCandidates() {
+		PathPattern p = new PathPatternParser().parse("/foo/{bar}/b?z/{*rest}");
+		byte[] bytes = "xx/foo/abc/baz/x/yyy".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+		assertTrue(p.matches(ByteSequence.forUtf8(bytes, 2, 16)));
+		assertFalse(p.matches(ByteSequence.forUtf8(bytes, 2, 11)));
+		assertTrue(p.matchStart(ByteSequence.forUtf8(bytes, 2, 9)));
+		Map<String, String> variables = p.matchAndExtract(ByteSequence.forUtf8(bytes, 2, 16));
+		assertEquals("abc", variables.get("bar"));
+		assertEquals("x/y", variables.get("rest"));
+
+		// Positions outside the slice are not read from the surrounding bytes
+		CharSequence slice = ByteSequence.forUtf8(bytes, 2, 16);
+		for (int index : new int[] {-1, 16}) {
+			try {
+				slice.charAt(index);
+				fail();
+			} catch (IndexOutOfBoundsException ex) {
+				// expected
+			}
+		}
+		try {
+			slice.subSequence(10, 17);
+			fail();
+		} catch (IndexOutOfBoundsException ex) {
+			// expected
+		}
+
+		java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(32);
+		direct.put("/foo/abc/bzz/x".getBytes(java.nio.charset.StandardCharsets.US_ASCII));
+		direct.flip();
+		assertTrue(ByteSequence.forUtf8(direct) instanceof ByteSequence);
+		assertEquals("abc", p.matchAndExtract(ByteSequence.forUtf8(direct)).get("bar"));
+		assertEquals(0, direct.position());
+
+		// Non ASCII data is decoded before matching
+		byte[] utf8 = "/foo/café/baz/x".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+		assertEquals("café", p.matchAndExtract(ByteSequence.forUtf8(java.nio.ByteBuffer.wrap(utf8))).get("bar"));
+		assertTrue(new PathPatternParser().parse("/foo/café/{*rest}").matches(ByteSequence.forUtf8(utf8, 0, utf8.length)));
+	}
+
+	@Test
+	public void matchAndCapture() {
+		PathPatternParser pp = new PathPatternParser();
+		PathPattern p = pp.parse("/customer/{customerId}/{a}_{b:[0-9]+}/{*rest}");
+		assertEquals(4, p.getCapturedVariableCount());
+		assertEquals("customerId", p.getCapturedVariableName(0));
+		assertEquals(3, p.getCaptureSlot("rest"));
+		assertEquals(-1, p.getCaptureSlot("foo"));
+
+		String path = "/customer/42/x_99/y/z";
+		PathMatchResult result = p.matchAndCapture(path);
+		assertEquals(4, result.getVariableCount());
+		assertEquals(10, result.getStart(0));
+		assertEquals(12, result.getEnd(0));
+		assertEquals("42", result.getValue("customerId"));
+		assertEquals("99", result.getValue(2));
+		assertEquals("y/z", result.getValue("rest"));
+		assertNull(result.getValue("foo"));
+		assertEquals("{customerId=42, a=x, b=99, rest=y/z}", result.asMap().toString());
+		assertSame(result.asMap(), result.asMap());
+		assertEquals(result.asMap(), p.matchAndExtract(path));
+		assertNull(p.matchAndCapture("/customer/42/x_y/z"));
+
+		p = pp.parse("/foo/*");
+		result = p.matchAndCapture("/foo/bar");
+		assertEquals(0, result.getVariableCount());
+		assertTrue(result.asMap().isEmpty());
+		assertNull(pp.parse("").matchAndCapture("/"));
+		assertNotNull(pp.parse("").matchAndCapture(""));
+	}
+
+	@Test
+	public void tokenizedPath() {
+		TokenizedPath path = new TokenizedPath("/foo/abc/baz.html", '/');
+		assertEquals(3, path.getSeparatorCount());
+		assertEquals(4, path.getSeparatorPosition(1));
+		assertEquals(0, path.nextSeparator(0));
+		assertEquals(8, path.nextSeparator(5));
+		assertEquals(17, path.nextSeparator(9));
+		assertEquals(0, new TokenizedPath("abc", '/').getSeparatorCount());
+
+		PathPatternParser pp = new PathPatternParser();
+		MatchingContext matchingContext = new MatchingContext();
+		assertTrue(pp.parse("/foo/{bar}/*.html").matches(path, matchingContext));
+		assertTrue(pp.parse("/foo/*/*.html/more").matchStart(path, matchingContext));
+		assertFalse(pp.parse("/foo/{bar}").matches(path, matchingContext));
+		assertEquals("abc", pp.parse("/{a}/{b}/{c}").matchAndExtract(path, matchingContext).get("b"));
+		assertEquals("baz.html", pp.parse("/foo/{*rest}").matchAndCapture(path).getValue(0).substring(4));
+
+		// Tokenized with a different separator, the positions are not used
+		PathPattern dotted = new PathPatternParser('.').parse("/foo/abc/baz.{ext}");
+		assertEquals("html", dotted.matchAndExtract(path).get("ext"));
+		assertTrue(dotted.matches(new TokenizedPath("/foo/abc/baz.html", '.')));
+	}
+
+	@Test
+	public void separatorScanning() {
+		// Separators at every offset relative to the 8 byte words scanned for a ByteSequence
+		for (int length = 0; length < 40; length++) {
+			for (int separatorPos = -1; separatorPos < length; separatorPos++) {
+				StringBuilder path = new StringBuilder();
+				for (int i = 0; i < length; i++) {
+					path.append(i == separatorPos ? '/' : (char) ('a' + i % 26));
+				}
+				int expected = (separatorPos == -1 ? length : separatorPos);
+				byte[] bytes = ("xyz" + path).getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+				java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(bytes.length);
+				direct.put(bytes).position(3);
+				CharSequence[] candidates = { path.toString(), path, ByteSequence.forUtf8(bytes, 3, length),
+						ByteSequence.forUtf8(direct), new TokenizedPath(path, '/') };
+				for (CharSequence candidate : candidates) {
+					assertEquals(candidate.getClass().getName(), expected, SeparatorScanner.scan(candidate, '/', 0));
+					assertEquals(length, SeparatorScanner.scan(candidate, '/', expected == length ? length : expected + 1));
+					assertEquals(length, SeparatorScanner.scan(candidate, '\u00e9', 0));
+				}
+			}
+		}
+		StringBuilder longSegment = new StringBuilder("/storage/");
+		for (int i = 0; i < 500; i++) {
+			longSegment.append((char) ('a' + i % 26));
+		}
+		String key = longSegment.substring(9);
+		longSegment.append("/meta");
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCompileMatchers(true);
+		for (CharSequence path : new CharSequence[] { longSegment.toString(), longSegment,
+				ByteSequence.forUtf8(longSegment.toString().getBytes(java.nio.charset.StandardCharsets.US_ASCII), 0, longSegment.length()) }) {
+			assertEquals(key, parse("/storage/{key}/meta").matchAndExtract(path).get("key"));
+			assertEquals(key, pp.parse("/storage/{key}/meta").matchAndExtract(path).get("key"));
+		}
+	}
+
+	@Test
+	public void literalFingerprints() {
+		assertEquals(0, parse("/{a}/*/{*rest}").getLiteralFingerprint());
+		PathPattern p = parse("/api/orders/{id}");
+		assertNotEquals(0, p.getLiteralFingerprint());
+		TokenizedPath path = new TokenizedPath("/api/orders/123", '/');
+		assertEquals(0, p.getLiteralFingerprint() & ~path.getLiteralFingerprint());
+		assertTrue(p.matches(path));
+		assertFalse(p.matches(new TokenizedPath("/api/invoices/123", '/')));
+		assertFalse(p.matches(new TokenizedPath("/api/orders", '/')));
+
+		// A segment of the path is only a literal if it is a complete segment
+		assertFalse(parse("/orders/{id}").matches(new TokenizedPath("/ordersx/1", '/')));
+
+		// Fingerprints are case folded so they work either way
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCaseSensitive(false);
+		p = pp.parse("/API/Orders/{id}");
+		assertTrue(p.matches(new TokenizedPath("/api/ORDERS/1", '/')));
+		assertFalse(parse("/api/Orders").matches(new TokenizedPath("/api/orders", '/')));
+
+		// '?' can match a separator, the literal segments are still whole segments of the path
+		assertTrue(parse("/a?b/orders").matches(new TokenizedPath("/a/b/orders", '/')));
+	}
+
+	@Test
+	public void candidatePrefilters() {
+		PathPattern p = parse("/foo/bar/");
+		assertEquals(9, p.minLength);
+		assertEquals(9, p.maxLength);
+		assertEquals(3, p.minSeparatorCount);
+		assertTrue(p.exactSeparatorCount);
+		assertTrue(p.endsWithSeparator);
+		p = parse("/foo/*.html/{id}");
+		assertEquals(11, p.minLength);
+		assertEquals(Integer.MAX_VALUE, p.maxLength);
+		assertFalse(p.endsWithSeparator);
+		p = parse("/a?c/{*rest}");
+		assertEquals(5, p.minLength);
+		assertEquals(2, p.minSeparatorCount);
+		assertFalse(p.exactSeparatorCount);
+
+		// The filters never reject something the chain would match
+		String[] patterns = { "/foo/bar/", "/foo/{id}", "/a?c", "/a?c/", "/{*rest}", "/*.html", "/f*/", "" };
+		String[] paths = { "", "/", "/foo/bar/", "/foo/bar", "/foo/", "/foo/x/", "/a/c", "/abc", "/a/c/", "/x.html",
+				"/f/", "/fff/x" };
+		for (String pattern : patterns) {
+			for (String path : paths) {
+				PathPattern pathPattern = parse(pattern);
+				boolean expected = pathPattern.getHeadSection() == null ? path.isEmpty()
+						: pathPattern.getHeadSection().matches(0, context(path, pathPattern));
+				assertEquals(pattern + " against " + path, expected, pathPattern.matches(path));
+				assertEquals(pattern + " against " + path, expected, pathPattern.matches(new TokenizedPath(path, '/')));
+			}
+		}
+	}
+
+	private MatchingContext context(String path, PathPattern pathPattern) {
+		MatchingContext matchingContext = new MatchingContext();
+		matchingContext.reset(path, pathPattern.getSeparator(), false, false);
+		return matchingContext;
+	}
+
+	@Test
+	public void reusedMatchingContext() {
+		PathPatternParser pp = new PathPatternParser();
+		MatchingContext matchingContext = new MatchingContext();
+		PathPattern p1 = pp.parse("/foo/{bar:[a-z]+}/{id}");
+		PathPattern p2 = pp.parse("/{a}_*/{b}_*");
+		assertTrue(p1.matches("/foo/abc/1", matchingContext));
+		assertFalse(p1.matches("/foo/123/1", matchingContext));
+		assertTrue(p2.matchStart("/x_y", matchingContext));
+		Map<String, String> variables = p1.matchAndExtract("/foo/abc/1", matchingContext);
+		assertEquals(2, variables.size());
+		assertEquals("abc", variables.get("bar"));
+		variables = p2.matchAndExtract("/x_y/z_z", matchingContext);
+		assertEquals(2, variables.size());
+		assertEquals("x", variables.get("a"));
+		assertEquals("z", variables.get("b"));
+		assertTrue(p1.matchAndExtract("/goo/abc/1", matchingContext).isEmpty());
+		// Earlier results are not changed by later matches
+		assertEquals("x", variables.get("a"));
+		assertEquals(2, variables.size());
+
+		// More regex patterns than the context keeps matchers for
+		for (int i = 0; i < 10; i++) {
+			for (int j = 0; j < 10; j++) {
+				PathPattern p = pp.parse("/{v:[a-" + (char) ('a' + j) + "]+}_" + i);
+				assertEquals(i <= j, p.matches("/" + (char) ('a' + i) + "_" + i, matchingContext));
+			}
+		}
+	}
+
 	@Test
 	public void questionMarks() {
 		checkNoMatch("a","ab");
@@ -107,7 +346,38 @@ public class PathPatternMatcherTests {
 		checkMatches("/a*b*c*d/bar","/abcd/bar");
 		checkMatches("*a*", "testa");
 	}
-	
+
+	@Test
+	public void globs() {
+		checkMatches("/*.html", "/index.html");
+		checkMatches("/*.html", "/.html");
+		checkNoMatch("/*.html", "/index.htm");
+		checkNoMatch("/*.html", "/a/index.html");
+		checkNoMatch("/*.html/", "/index.html");
+		checkMatches("/foo*bar/x", "/foobar/x");
+		checkMatches("/foo*bar/x", "/foo123bar/x");
+		checkNoMatch("/foo*bar/x", "/fooba/x");
+		checkNoMatch("/foo*bar/x", "/foo/bar/x");
+		checkMatches("/api-*", "/api-v1");
+		checkNoMatch("/api-*", "/ap-v1");
+		checkMatches("/a*b*c", "/abbbc");
+		checkMatches("/a*bc*bc", "/abcbcbc");
+		checkNoMatch("/a*bc*bc", "/abcb");
+		checkMatches("/*-?.*", "/file-1.txt");
+		checkNoMatch("/*-?.*", "/file-12.txt");
+		checkNoMatch("/x?*", "/x/");
+		checkMatches("/**", "/abc");
+		checkMatches("/a**b", "/ab");
+		assertTrue(parse("/*.html/foo").matchStart("/index.html"));
+		assertFalse(parse("/*.html/foo").matchStart("/index.htm"));
+
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCaseSensitive(false);
+		assertTrue(pp.parse("/*.HTML").matches("/index.html"));
+		assertTrue(pp.parse("/*.h?ml").matches("/INDEX.HTML"));
+		assertFalse(pp.parse("/*.html").matches("/index.htm"));
+	}
+
 	@Test
 	public void constrainedMatches() {
 		checkCapture("{foo:[0-9]*}","123","foo","123");
@@ -122,6 +392,82 @@ public class PathPatternMatcherTests {
 		// TODO escaped curly braces in expression
 	}
 
+	@Test
+	public void characterClassConstraints() {
+		String[] simple = { "\\d+", "[0-9]+", "[a-z]+", "[a-zA-Z0-9_-]+", "\\w*", "[^/]+", "[a-f0-9]{4}",
+				"\\d{2,3}", "\\d{2,}", "[\\d.]+", "[-a]?", "\\s+", "[\\]x]+", "[^a]+", "[A-C]+", "[^B-Z]+" };
+		String[] complex = { "...", "\\d+[a-z]", "[]a]+", "[a-z&&[^e]]+", "\\p{L}+", "\\D+", "a+", "[é]+", "\\d+?" };
+		String[] inputs = { "", "1", "12", "123", "1234", "abc", "ABC", "a_b-c", "ab12", "a.b", "1.2", "a/b", "-", "é",
+				" \t", "x]", "\\", "A", "aBc", "\u212A" };
+		for (String regex : simple) {
+			CharacterClassConstraint constraint = CharacterClassConstraint.parse(regex, true);
+			CharacterClassConstraint caseInsensitiveConstraint = CharacterClassConstraint.parse(regex, false);
+			assertNotNull(regex, constraint);
+			java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regex);
+			java.util.regex.Pattern caseInsensitivePattern = java.util.regex.Pattern.compile(regex,
+					java.util.regex.Pattern.CASE_INSENSITIVE);
+			for (String input : inputs) {
+				assertEquals(regex + " on '" + input + "'", pattern.matcher(input).matches(),
+						constraint.matches("//" + input + "/", 2, 2 + input.length()));
+				assertEquals(regex + " on '" + input + "' ignoring case", caseInsensitivePattern.matcher(input).matches(),
+						caseInsensitiveConstraint.matches("//" + input + "/", 2, 2 + input.length()));
+			}
+		}
+		for (String regex : complex) {
+			assertNull(regex, CharacterClassConstraint.parse(regex, true));
+		}
+		checkCapture("/{id:\\d+}/{name:[a-z]+}", "/42/bob", "id", "42", "name", "bob");
+		checkNoMatch("/{id:\\d+}/{name:[a-z]+}", "/42/Bob");
+		checkNoMatch("/{id:\\d{3}}", "/42");
+	}
+
+	@Test
+	public void globsMatchLikeTheRegexTheyReplace() {
+		String[] globs = { "*.html", "a*b", "a?*b", "a*b*c", "*-?.*", "?*", "*É*" };
+		String[] segments = { "index.html", "INDEX.HTML", "x\n.html", "x.html\r", "ab", "a\nb", "a\rb", "a\u0085b",
+				"a\u2028b", "a\u2029bc", "AXB", "a\nbc", "ab\nc", "abc", "f-1.txt", "f-\n.txt", "\n", "é", "É", "xéx" };
+		for (String glob : globs) {
+			StringBuilder regex = new StringBuilder();
+			for (char ch : glob.toCharArray()) {
+				regex.append(ch == '*' ? ".*" : ch == '?' ? "." : java.util.regex.Pattern.quote(String.valueOf(ch)));
+			}
+			for (boolean caseSensitive : new boolean[] { true, false }) {
+				java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regex.toString(),
+						caseSensitive ? 0 : java.util.regex.Pattern.CASE_INSENSITIVE);
+				PathPatternParser pp = new PathPatternParser();
+				pp.setCaseSensitive(caseSensitive);
+				PathPattern pathPattern = pp.parse("/" + glob);
+				assertTrue(pathPattern.getHeadSection().next instanceof GlobPathElement);
+				PathPatternAutomaton automaton = new PathPatternAutomaton(java.util.Collections.singletonList(pathPattern));
+				for (String segment : segments) {
+					String message = glob + (caseSensitive ? "" : " ignoring case") + " on '" + segment + "'";
+					boolean expected = pattern.matcher(segment).matches();
+					assertEquals(message, expected, pathPattern.matches("/" + segment));
+					assertEquals(message, expected, automaton.findMatches("/" + segment).size() == 1);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void caseInsensitiveFolding() {
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCaseSensitive(false);
+		assertTrue(pp.parse("/Foo/BAR").matches("/fOO/bar"));
+		assertTrue(pp.parse("/f?o/b?r").matches("/FOO/BAR"));
+		assertTrue(pp.parse("/*.HTML").matches("/Index.Html"));
+		assertTrue(pp.parse("/{id:[a-f]+}").matches("/aBcDeF"));
+		assertFalse(pp.parse("/{id:[a-f]+}").matches("/aBcDeFg"));
+		// Non ASCII characters go through Character.toLowerCase, including those folding to ASCII
+		assertTrue(pp.parse("/CAFÉ").matches("/café"));
+		assertTrue(pp.parse("/k").matches("/\u212A"));
+		assertTrue(pp.parse("/?k").matches("/x\u212A"));
+		assertFalse(pp.parse("/k").matches("/\u212B"));
+		for (char ch = 0; ch < 256; ch++) {
+			assertEquals(Character.toLowerCase(ch), PathElement.toLowerCase(ch));
+		}
+	}
+
 	@Test
 	public void oldAntPathMatcherTests() {
 		// test exact matching
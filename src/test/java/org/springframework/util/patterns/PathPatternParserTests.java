@@ -18,9 +18,15 @@ package org.springframework.util.patterns;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.regex.PatternSyntaxException;
 
 import org.junit.Test;
 import org.springframework.util.patterns.PathPattern;
@@ -28,6 +34,7 @@ import org.springframework.util.patterns.PathPatternComparator;
 import org.springframework.util.patterns.PatternMessage;
 import org.springframework.util.patterns.PatternParseException;
 import org.springframework.util.patterns.PathPatternParser;
+import org.springframework.util.patterns.PathPatternParser.ParseResult;
 
 /**
  * Exercise the {@link PathPatternParser}.
@@ -60,9 +67,9 @@ public class PathPatternParserTests {
 	public void multiwildcardPattern() {
 		// Verifying that /** is not recognized as anything 'special'
 		p = checkStructure("/**");
-		assertPathElements(p,SeparatorPathElement.class,RegexPathElement.class);
+		assertPathElements(p,SeparatorPathElement.class,GlobPathElement.class);
 		p = checkStructure("/**acb"); // this is not double wildcard use, it is / then **acb (an odd, unnecessary use of double *)
-		assertPathElements(p,SeparatorPathElement.class,RegexPathElement.class);
+		assertPathElements(p,SeparatorPathElement.class,GlobPathElement.class);
 	}
 	
 	@Test
@@ -107,9 +114,9 @@ public class PathPatternParserTests {
 		checkStructure("*/");
 		checkStructure("/*/");
 		p = checkStructure("/*a*/");
-		assertEquals(RegexPathElement.class.getName(),p.getHeadSection().next.getClass().getName());
+		assertEquals(GlobPathElement.class.getName(),p.getHeadSection().next.getClass().getName());
 		p = checkStructure("**/");
-		assertEquals(RegexPathElement.class.getName(),p.getHeadSection().getClass().getName());
+		assertEquals(GlobPathElement.class.getName(),p.getHeadSection().getClass().getName());
 		checkError("{foo}_{foo}", 0, PatternMessage.ILLEGAL_DOUBLE_CAPTURE, "foo");
 		checkError("/{bar}/{bar}", 7, PatternMessage.ILLEGAL_DOUBLE_CAPTURE, "bar");
 		checkError("/{bar}/{bar}_{foo}", 7, PatternMessage.ILLEGAL_DOUBLE_CAPTURE, "bar");
@@ -135,6 +142,8 @@ public class PathPatternParserTests {
 		p = checkStructure("{foo:[0-9]*}");
 		assertPathElements(p, CaptureVariablePathElement.class);
 		checkError("{foo:}",5,PatternMessage.MISSING_REGEX_CONSTRAINT);
+		checkError("/foo/{id:(}",5,PatternMessage.REGEX_PATTERN_SYNTAX_EXCEPTION);
+		checkError("/foo/a{id:(}",5,PatternMessage.REGEX_PATTERN_SYNTAX_EXCEPTION);
 	}
 
 	@Test
@@ -308,6 +317,100 @@ public class PathPatternParserTests {
 		assertNull(patterns.get(2));
 	}
 
+	@Test
+	public void parseAll() {
+		List<String> patternStrings = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			patternStrings.add(i % 50 == 0 ? "/foo/{bar" + i : "/foo/" + i + "/{bar}");
+		}
+		PathPatternParser parser = new PathPatternParser();
+		parser.setCaseSensitive(false);
+		List<ParseResult> results = parser.parseAll(patternStrings);
+		checkParseAllResults(patternStrings, results);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			checkParseAllResults(patternStrings, parser.parseAll(patternStrings, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parseAllWithInvalidConstraint() {
+		List<ParseResult> results = new PathPatternParser().parseAll(Arrays.asList("/ok", "/foo/{id:(}"));
+		assertEquals(2, results.size());
+		assertTrue(results.get(0).isParsed());
+		assertEquals("/ok", results.get(0).getPathPattern().getPatternString());
+		assertFalse(results.get(1).isParsed());
+		assertEquals(PatternMessage.REGEX_PATTERN_SYNTAX_EXCEPTION, results.get(1).getException().getMessageType());
+		assertTrue(results.get(1).getException().getCause() instanceof PatternSyntaxException);
+	}
+
+	private void checkParseAllResults(List<String> patternStrings, List<ParseResult> results) {
+		assertEquals(patternStrings.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			ParseResult result = results.get(i);
+			assertEquals(patternStrings.get(i), result.getPatternString());
+			if (i % 50 == 0) {
+				assertFalse(result.isParsed());
+				assertNull(result.getPathPattern());
+				assertEquals(PatternMessage.MISSING_CLOSE_CAPTURE, result.getException().getMessageType());
+			} else {
+				assertTrue(result.isParsed());
+				assertEquals(patternStrings.get(i), result.getPathPattern().getPatternString());
+				assertFalse(result.getPathPattern().isCaseSensitive());
+				assertTrue(result.getPathPattern().matches("/FOO/" + i + "/x"));
+			}
+		}
+	}
+
+	@Test
+	public void sharedParser() throws Exception {
+		PathPatternParser parser = new PathPatternParser();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < 1000; i++) {
+					PathPattern p = parser.parse("/customer/{id}/orders/{order:[0-9]+}/" + i);
+					assertEquals("Separator(/) Literal(customer) Separator(/) CaptureVariable({id}) Separator(/) "
+							+ "Literal(orders) Separator(/) CaptureVariable({order:[0-9]+}) Separator(/) Literal(" + i + ")",
+							p.toChainString());
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void interning() {
+		PathPatternParser parser = new PathPatternParser();
+		parser.setInternPatterns(true);
+		PathPattern p1 = parser.parse("/api/v1/users/{id:\\d+|me}");
+		PathPattern p2 = parser.parse("/api/v1/orders/{id:\\d+|me}");
+		assertSame(p1, parser.parse("/api/v1/users/{id:\\d+|me}"));
+		CaptureVariablePathElement c1 = (CaptureVariablePathElement) p1.getHeadSection().next.next.next.next.next.next.next;
+		CaptureVariablePathElement c2 = (CaptureVariablePathElement) p2.getHeadSection().next.next.next.next.next.next.next;
+		assertSame(c1.getConstraint(), c2.getConstraint());
+		// api, v1, users, orders, one regex and two patterns
+		assertEquals(7, parser.interner.size());
+
+		// A change of configuration is a different pattern
+		parser.setCaseSensitive(false);
+		PathPattern p3 = parser.parse("/api/v1/users/{id:\\d+|me}");
+		assertNotSame(p1, p3);
+		assertTrue(p3.matches("/API/v1/users/ME"));
+		assertFalse(p1.matches("/API/v1/users/ME"));
+
+		// Without interning nothing is shared
+		parser = new PathPatternParser();
+		assertNotSame(parser.parse("/api"), parser.parse("/api"));
+		assertEquals(0, parser.interner.size());
+	}
+
 	// ---
 	
 	private PathPattern parse(String pattern) {
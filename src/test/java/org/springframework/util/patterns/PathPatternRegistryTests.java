@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Exercise the {@link PathPatternRegistry}.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternRegistryTests {
+
+	private static final String[] PATTERNS = { "", "/", "/foo", "/foo/", "/foo/bar", "foo/bar", "/foo/{bar}",
+			"/foo/{bar}/boo", "/foo/*", "/foo/*/boo", "/f?o/bar", "/*/bar", "/foo/b*", "/foo/{bar:[0-9]+}",
+			"/foo/{*rest}", "/{*rest}", "/customer/{id}.json", "/customer/{id}/orders/{order}", "{id}",
+			"/foo/bar/**", "/*.html", "*" };
+
+	private static final String[] PATHS = { "", "/", "//", "/foo", "/foo/", "/foo/bar", "foo/bar", "/foo/123",
+			"/foo/bar/boo", "/foo/zzz/boo", "/fxo/bar", "/goo/bar", "/foo/baz", "/foo/a/b/c", "/customer/42.json",
+			"/customer/42/orders/7", "abc", "/foo/bar/**", "/index.html", "/FOO/BAR" };
+
+	@Test
+	public void basicLookups() {
+		PathPatternRegistry registry = new PathPatternRegistry();
+		PathPatternParser pp = new PathPatternParser();
+		registry.register(pp.parse("/foo"));
+		registry.register(pp.parse("/foo/{bar}"));
+		registry.register(pp.parse("/foo/bar"));
+		assertEquals(3, registry.size());
+		checkMatches(registry, "/foo", "/foo");
+		checkMatches(registry, "/foo/bar", "/foo/{bar}", "/foo/bar");
+		checkMatches(registry, "/foo/baz", "/foo/{bar}");
+		checkMatches(registry, "/goo");
+		checkMatches(registry, "");
+	}
+
+	@Test
+	public void caseInsensitive() {
+		PathPatternRegistry registry = new PathPatternRegistry();
+		PathPatternParser pp = new PathPatternParser();
+		pp.setCaseSensitive(false);
+		registry.register(pp.parse("/fOo/bAr"));
+		registry.register(pp.parse("/fOo/{bar}"));
+		registry.register(new PathPatternParser().parse("/foo/bar"));
+		checkMatches(registry, "/FOO/BAR", "/fOo/bAr", "/fOo/{bar}");
+		checkMatches(registry, "/foo/bar", "/fOo/bAr", "/fOo/{bar}", "/foo/bar");
+	}
+
+	@Test
+	public void alternativeSeparator() {
+		PathPatternRegistry registry = new PathPatternRegistry('.');
+		PathPatternParser pp = new PathPatternParser('.');
+		registry.register(pp.parse("a.b.c"));
+		registry.register(pp.parse("a.*.c"));
+		checkMatches(registry, "a.b.c", "a.b.c", "a.*.c");
+		checkMatches(registry, "a.x.c", "a.*.c");
+		try {
+			registry.register(new PathPatternParser().parse("/a/b"));
+			fail("Expected separator mismatch to be rejected");
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sameResultsAsMatchingEachPattern() {
+		PathPatternParser pp = new PathPatternParser();
+		PathPatternParser caseInsensitiveParser = new PathPatternParser();
+		caseInsensitiveParser.setCaseSensitive(false);
+		PathPatternRegistry registry = new PathPatternRegistry();
+		List<PathPattern> patterns = new ArrayList<>();
+		for (String pattern : PATTERNS) {
+			patterns.add(pp.parse(pattern));
+			patterns.add(caseInsensitiveParser.parse(pattern));
+		}
+		for (PathPattern pattern : patterns) {
+			registry.register(pattern);
+		}
+		for (String path : PATHS) {
+			List<PathPattern> expected = new ArrayList<>();
+			for (PathPattern pattern : patterns) {
+				if (pattern.matches(path)) {
+					expected.add(pattern);
+				}
+			}
+			List<PathPattern> actual = registry.findMatches(path);
+			assertEquals("Wrong matches for " + path, expected.size(), actual.size());
+			assertEquals("Wrong matches for " + path, new HashSet<>(expected), new HashSet<>(actual));
+		}
+	}
+
+	// ---
+
+	private void checkMatches(PathPatternRegistry registry, String path, String... expectedPatterns) {
+		List<PathPattern> matches = registry.findMatches(path);
+		assertEquals("Wrong matches for " + path + ": " + matches, expectedPatterns.length, matches.size());
+		List<String> matchedPatternStrings = new ArrayList<>();
+		for (PathPattern match : matches) {
+			matchedPatternStrings.add(match.getPatternString());
+		}
+		for (String expectedPattern : expectedPatterns) {
+			assertTrue("Expected " + expectedPattern + " to match " + path, matchedPatternStrings.contains(expectedPattern));
+		}
+	}
+
+}
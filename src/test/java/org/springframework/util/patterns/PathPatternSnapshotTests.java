@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+/**
+ * Exercise the {@link PathPatternSnapshot}.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternSnapshotTests {
+
+	private static final String[] PATTERNS = { "", "/", "/foo", "foo/bar/", "/f?o/b?r", "/foo/*", "/*.html",
+			"/foo/{bar}", "/foo/{bar:[0-9]+}", "/foo/{bar:\\d+|me}", "/customer/{id}.json", "/{a}_{b:[a-z]+}/*_*",
+			"/foo/{*rest}", "/café/{id}" };
+
+	private static final String[] PATHS = { "", "/", "/foo", "foo/bar/", "/fxo/bxr", "/foo/bar", "/index.html",
+			"/foo/123", "/foo/me", "/customer/42.json", "/x_abc/1_2", "/foo/a/b/c", "/café/1", "/FOO/BAR" };
+
+	@Test
+	public void roundTrip() throws IOException {
+		for (boolean caseSensitive : new boolean[] { true, false }) {
+			for (boolean compile : new boolean[] { true, false }) {
+				PathPatternParser parser = new PathPatternParser();
+				parser.setCaseSensitive(caseSensitive);
+				parser.setCompileMatchers(compile);
+				parser.setDeferConstraintChecks(compile);
+				List<PathPattern> original = new ArrayList<>();
+				for (String pattern : PATTERNS) {
+					original.add(parser.parse(pattern));
+				}
+				checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(write(original))));
+			}
+		}
+		PathPatternParser parser = new PathPatternParser('.');
+		List<PathPattern> original = Arrays.asList(parser.parse("a.{b}.c"), parser.parse("a.*.{*rest}"));
+		checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(write(original))));
+	}
+
+	@Test
+	public void otherVersionIsReparsed() throws IOException {
+		List<PathPattern> original = Arrays.asList(new PathPatternParser().parse("/foo/{bar}"));
+		byte[] snapshot = write(original);
+		// The version follows the 4 byte magic number
+		snapshot[5] = (byte) (PathPatternSnapshot.VERSION + 1);
+		// Element data in another encoding, which cannot be rebuilt, so the pattern must be reparsed
+		for (int i = kindOffset(snapshot, 0); i < snapshot.length; i++) {
+			snapshot[i] = (byte) 0xFF;
+		}
+		checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(snapshot)));
+	}
+
+	@Test
+	public void reparsingKeepsTheDeferredConstraintChecksOption() throws IOException {
+		// No element of the pattern has a constraint, the option still comes from the parser
+		PathPatternParser parser = new PathPatternParser();
+		parser.setDeferConstraintChecks(true);
+		List<PathPattern> original = Arrays.asList(parser.parse("/foo/*"));
+		assertTrue(original.get(0).isConstraintChecksDeferred());
+		byte[] snapshot = write(original);
+		checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(snapshot)));
+		snapshot[5] = (byte) (PathPatternSnapshot.VERSION + 1);
+		List<PathPattern> reparsed = PathPatternSnapshot.read(new ByteArrayInputStream(snapshot));
+		checkSame(original, reparsed);
+		assertTrue(reparsed.get(0).isConstraintChecksDeferred());
+	}
+
+	@Test
+	public void elementDataThatDoesNotDescribeThePatternIsReparsed() throws IOException {
+		List<PathPattern> original = Arrays.asList(new PathPatternParser().parse("/foo/{bar}"));
+		byte[] snapshot = write(original);
+		// A different kind of element for the same text, with a checksum that matches
+		snapshot[kindOffset(snapshot, 1)] = PathElementKind.SINGLE_CHAR_WILDCARDED;
+		checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(updateChecksum(snapshot))));
+		// A wildcard in place of the literal
+		snapshot[kindOffset(snapshot, 1)] = PathElementKind.WILDCARD;
+		checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(updateChecksum(snapshot))));
+		// A kind that does not exist
+		snapshot[kindOffset(snapshot, 1)] = 99;
+		checkSame(original, PathPatternSnapshot.read(new ByteArrayInputStream(updateChecksum(snapshot))));
+	}
+
+	@Test
+	public void damagedSnapshotIsRejected() throws IOException {
+		List<PathPattern> original = Arrays.asList(new PathPatternParser().parse("/foo/{bar}"));
+		byte[] snapshot = write(original);
+		// The 'f' of the pattern text becomes a 'g', reparsing it would give a different route
+		byte[] damagedText = snapshot.clone();
+		damagedText[15]++;
+		checkRejected(damagedText);
+		byte[] damagedElements = snapshot.clone();
+		damagedElements[kindOffset(snapshot, 1)] = PathElementKind.SINGLE_CHAR_WILDCARDED;
+		checkRejected(damagedElements);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedSnapshot() throws IOException {
+		byte[] snapshot = write(Arrays.asList(new PathPatternParser().parse("/foo/{bar}")));
+		PathPatternSnapshot.read(new ByteArrayInputStream(Arrays.copyOf(snapshot, snapshot.length - 3)));
+	}
+
+	@Test(expected = IOException.class)
+	public void notASnapshot() throws IOException {
+		PathPatternSnapshot.read(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+	}
+
+	/**
+	 * @return the offset of the kind of the specified element of the first pattern in a snapshot, for
+	 * patterns short enough that the counts and element lengths each take a single byte and where only
+	 * the last element may be a capture
+	 */
+	private int kindOffset(byte[] snapshot, int element) {
+		// magic, version, pattern count, then the text length and text of the first pattern
+		int textLength = ((snapshot[10] & 0xff) << 24) | ((snapshot[11] & 0xff) << 16) | ((snapshot[12] & 0xff) << 8)
+				| (snapshot[13] & 0xff);
+		// separator, options and the element data length come before the element data, which
+		// starts with the element count and the capture count
+		int elements = 14 + textLength + 2 + 1 + 4;
+		return elements + 2 + element * 2;
+	}
+
+	private void checkRejected(byte[] snapshot) {
+		try {
+			PathPatternSnapshot.read(new ByteArrayInputStream(snapshot));
+			fail();
+		} catch (IOException ex) {
+			assertTrue(ex.getMessage(), ex.getMessage().contains("damaged"));
+		}
+	}
+
+	/**
+	 * Replace the checksum at the end of the snapshot with one for its current content.
+	 */
+	private byte[] updateChecksum(byte[] snapshot) {
+		CRC32 crc = new CRC32();
+		crc.update(snapshot, 0, snapshot.length - 4);
+		int checksum = (int) crc.getValue();
+		for (int i = 0; i < 4; i++) {
+			snapshot[snapshot.length - 4 + i] = (byte) (checksum >>> (24 - i * 8));
+		}
+		return snapshot;
+	}
+
+	private byte[] write(List<PathPattern> pathPatterns) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PathPatternSnapshot.write(pathPatterns, out);
+		return out.toByteArray();
+	}
+
+	private void checkSame(List<PathPattern> expected, List<PathPattern> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			PathPattern e = expected.get(i);
+			PathPattern a = actual.get(i);
+			assertEquals(e, a);
+			assertEquals(e.toChainString(), a.toChainString());
+			assertEquals(e.getScore(), a.getScore());
+			assertEquals(e.getNormalizedLength(), a.getNormalizedLength());
+			assertEquals(e.getSortKey(), a.getSortKey());
+			assertEquals(e.getLiteralFingerprint(), a.getLiteralFingerprint());
+			assertEquals(e.getFlags(), a.getFlags());
+			assertEquals(e.isCompiled(), a.isCompiled());
+			for (String path : PATHS) {
+				assertEquals(e.getPatternString() + " against " + path, e.matches(path), a.matches(path));
+				assertEquals(e.matchStart(path), a.matchStart(path));
+				assertEquals(e.matchAndExtract(path), a.matchAndExtract(path));
+			}
+		}
+	}
+
+}
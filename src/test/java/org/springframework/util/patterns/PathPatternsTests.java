@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Exercise {@link PathPatterns} and the sort keys of patterns it relies on.
+ *
+ * @author Andy Clement
+ */
+public class PathPatternsTests {
+
+	private static final String[] SHAPES = { "/%s", "/%s/", "/%s/{id}", "/%s/{id:[0-9]+}", "/%s/*", "/%s/*/*",
+			"/%s/{id}/items/{item}", "/%s/{*rest}", "/%s/x/{*rest}", "/{*rest}", "/%s/*.json", "/%s/?", "/%s/{a}_{b}",
+			"", "/" };
+
+	@Test
+	public void sortKeyConsistentWithComparison() {
+		List<PathPattern> pathPatterns = createPatterns(100);
+		for (PathPattern p1 : pathPatterns) {
+			for (PathPattern p2 : pathPatterns) {
+				int expected = Integer.signum(compare(p1, p2));
+				assertEquals(p1 + " vs " + p2, expected, p1.compareTo(p2));
+				assertEquals(expected, Long.signum(Long.compare(p1.getSortKey(), p2.getSortKey())));
+			}
+			assertTrue(p1.getSortKey() >= 0);
+		}
+	}
+
+	@Test
+	public void sort() {
+		for (int size : new int[] { 0, 1, 10, 63, 64, 1000, 10000 }) {
+			List<PathPattern> pathPatterns = createPatterns(size);
+			for (int i = 0; i < size / 50; i++) {
+				pathPatterns.set(i * 50, null);
+			}
+			Collections.shuffle(pathPatterns, new Random(size));
+			List<PathPattern> expected = new ArrayList<>(pathPatterns);
+			Collections.sort(expected, new PathPatternComparator());
+			PathPatterns.sort(pathPatterns);
+			// Stable, so the same instances in the same order
+			for (int i = 0; i < size; i++) {
+				assertSame(expected.get(i), pathPatterns.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void sortConsideringPath() {
+		for (int size : new int[] { 0, 10, 1000 }) {
+			List<PathPattern> pathPatterns = createPatterns(size);
+			String path = (size == 0 ? "/x" : pathPatterns.get(size / 2).getPatternString());
+			if (size != 0) {
+				pathPatterns.set(0, null);
+			}
+			Collections.shuffle(pathPatterns, new Random(size));
+			List<PathPattern> expected = new ArrayList<>(pathPatterns);
+			Collections.sort(expected, new PatternComparatorConsideringPath(path));
+			PathPatterns.sort(pathPatterns, path);
+			for (int i = 0; i < size; i++) {
+				assertSame(expected.get(i), pathPatterns.get(i));
+			}
+			if (size != 0) {
+				assertEquals(path, pathPatterns.get(0).getPatternString());
+			}
+		}
+		// A catch all that is the path still comes first
+		PathPatternParser parser = new PathPatternParser();
+		List<PathPattern> pathPatterns = new ArrayList<>();
+		pathPatterns.add(parser.parse("/foo/bar"));
+		pathPatterns.add(parser.parse("/foo/{*rest}"));
+		PathPatterns.sort(pathPatterns, "/foo/{*rest}");
+		assertEquals("/foo/{*rest}", pathPatterns.get(0).getPatternString());
+	}
+
+	@Test
+	public void findBestMatch() {
+		List<PathPattern> pathPatterns = createPatterns(1000);
+		pathPatterns.set(3, null);
+		Collections.shuffle(pathPatterns, new Random(1));
+		String[] paths = { "/r0", "/r7/", "/r919/123", "/r919/abc", "/r838/x/y", "/r838/x/y/z", "/zzz/1", "/",
+				"", "/r1/a.json", "/r1/{id}", "/r1/*" };
+		for (String path : paths) {
+			List<PathPattern> matching = new ArrayList<>();
+			for (PathPattern pathPattern : pathPatterns) {
+				if (pathPattern != null && pathPattern.matches(path)) {
+					matching.add(pathPattern);
+				}
+			}
+			Collections.sort(matching, new PatternComparatorConsideringPath(path));
+			PathMatchResult result = PathPatterns.findBestMatch(pathPatterns, path);
+			if (matching.isEmpty()) {
+				assertNull(path, result);
+			} else {
+				assertSame(path, matching.get(0), result.getPathPattern());
+				assertEquals(path, matching.get(0).matchAndExtract(path), result.asMap());
+				assertSame(path, result.getPath());
+			}
+		}
+		assertNull(PathPatterns.findBestMatch(new ArrayList<>(), "/foo"));
+	}
+
+	private List<PathPattern> createPatterns(int count) {
+		PathPatternParser parser = new PathPatternParser();
+		List<PathPattern> pathPatterns = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			pathPatterns.add(parser.parse(String.format(SHAPES[i % SHAPES.length], "r" + (i * 7919 % 1000))));
+		}
+		return pathPatterns;
+	}
+
+	/**
+	 * The comparison PathPattern.compareTo made before it used the sort keys.
+	 */
+	private int compare(PathPattern p1, PathPattern p2) {
+		if (p1.isCatchAll()) {
+			if (p2.isCatchAll()) {
+				int lenDifference = p1.getNormalizedLength() - p2.getNormalizedLength();
+				if (lenDifference != 0) {
+					return (lenDifference < 0) ? +1 : -1;
+				}
+			} else {
+				return +1;
+			}
+		} else if (p2.isCatchAll()) {
+			return -1;
+		}
+		int score = p1.getScore() - p2.getScore();
+		if (score != 0) {
+			return (score < 0) ? -1 : +1;
+		}
+		int lenDifference = p1.getNormalizedLength() - p2.getNormalizedLength();
+		return (lenDifference < 0) ? +1 : (lenDifference == 0 ? 0 : -1);
+	}
+
+}
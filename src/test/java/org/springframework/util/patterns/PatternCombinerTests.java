@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.util.patterns;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Exercise the {@link PatternCombiner} and {@link PathPattern#combine(PathPattern)}.
+ *
+ * @author Andy Clement
+ */
+public class PatternCombinerTests {
+
+	private PathPatternParser parser = new PathPatternParser();
+
+	@Test
+	public void sameAsCombiningStrings() {
+		checkCombine("", "");
+		checkCombine("/hotels", "");
+		checkCombine("", "/hotels");
+		checkCombine("/hotels/*", "booking");
+		checkCombine("/hotels/*", "/booking");
+		checkCombine("/hotels/**", "booking");
+		checkCombine("/hotels/**", "/booking");
+		checkCombine("/hotels", "/booking");
+		checkCombine("/hotels", "booking");
+		checkCombine("/hotels/", "booking");
+		checkCombine("/hotels/*", "{hotel}");
+		checkCombine("/hotels/**", "{hotel}");
+		checkCombine("/hotels", "{hotel}");
+		checkCombine("/hotels", "{hotel}.*");
+		checkCombine("/hotels/*/booking", "{booking}");
+		checkCombine("/*.html", "/hotel.html");
+		checkCombine("/*.html", "/hotel");
+		checkCombine("/*.html", "/hotel.*");
+		checkCombine("/**", "/*.html");
+		checkCombine("/*", "/*.html");
+		checkCombine("/*.*", "/*.html");
+		checkCombine("/{foo}", "/bar");
+		checkCombine("/user", "/user");
+		checkCombine("/{foo:.*[^0-9].*}", "/edit/");
+		checkCombine("/1.0", "/foo/test");
+		checkCombine("/", "/hotel");
+		checkCombine("/hotel/", "/booking");
+		checkCombine("/api/{version}", "/orders/{id:\\d+}/{*rest}");
+		checkCombine("/api/v?", "/items/{a}-{b}");
+		checkCombine("/api/v*", "/f?o*.txt");
+		checkCombine("/Hotels", "Booking/{id}");
+		checkCombine("/hotels/", "/");
+		checkCombine("/hotels/*", "/");
+		checkCombine("/", "/");
+	}
+
+	@Test
+	public void sameTextAsCombineString() {
+		String[][] pairs = { { "/hotels/", "/" }, { "/hotels/*", "/" }, { "/", "/" }, { "/hotels", "/" },
+				{ "/", "hotels" }, { "/", "/hotels/" }, { "/hotels/", "/booking/" }, { "/hotels/", "booking" },
+				{ "/hotels/*", "/booking/" }, { "/hotels/**", "/" }, { "/hotels", "" }, { "", "/" },
+				{ "/{hotel}/", "/" }, { "/*.html", "/hotel" }, { "hotels", "booking" } };
+		for (String[] pair : pairs) {
+			PathPattern pattern1 = parser.parse(pair[0]);
+			assertEquals(pair[0] + " + " + pair[1], pattern1.combine(pair[1]),
+					pattern1.combine(parser.parse(pair[1])).getPatternString());
+		}
+	}
+
+	@Test
+	public void combinedPatternMatches() {
+		PathPattern p = parser.parse("/hotels/{hotel}").combine(parser.parse("/rooms/{room:\\d+}/{*rest}"));
+		assertEquals("/hotels/{hotel}/rooms/{room:\\d+}/{*rest}", p.getPatternString());
+		Map<String, String> variables = p.matchAndExtract("/hotels/ritz/rooms/12/a/b");
+		assertEquals("ritz", variables.get("hotel"));
+		assertEquals("12", variables.get("room"));
+		assertEquals("a/b", variables.get("rest"));
+		assertFalse(p.matches("/hotels/ritz/rooms/twelve/a"));
+
+		PathPatternParser caseInsensitive = new PathPatternParser();
+		caseInsensitive.setCaseSensitive(false);
+		p = caseInsensitive.parse("/Hotels").combine(parser.parse("/Rooms"));
+		assertFalse(p.isCaseSensitive());
+		assertTrue(p.matches("/hotels/rooms"));
+	}
+
+	@Test
+	public void invalidCombinations() {
+		try {
+			parser.parse("/*.html").combine(parser.parse("/*.txt"));
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		try {
+			parser.parse("/foo").combine(new PathPatternParser('.').parse("bar"));
+			fail();
+		} catch (IllegalArgumentException iae) {
+			// expected
+		}
+		try {
+			parser.parse("/{id}").combine(parser.parse("/x/{id}"));
+			fail();
+		} catch (PatternParseException ppe) {
+			assertEquals(PatternMessage.ILLEGAL_DOUBLE_CAPTURE, ppe.getMessageType());
+			assertEquals(8, ppe.getPosition());
+		}
+		try {
+			parser.parse("/{*rest}").combine(parser.parse("/bar"));
+			fail();
+		} catch (PatternParseException ppe) {
+			assertEquals(PatternMessage.NO_MORE_DATA_EXPECTED_AFTER_CAPTURE_THE_REST, ppe.getMessageType());
+			assertEquals(8, ppe.getPosition());
+		}
+	}
+
+	@Test
+	public void combinationsAreRemembered() {
+		PatternCombiner combiner = new PatternCombiner(2);
+		PathPattern hotels = parser.parse("/hotels");
+		PathPattern p = combiner.combine(hotels, parser.parse("/{hotel}"));
+		assertEquals("/hotels/{hotel}", p.getPatternString());
+		assertSame(p, combiner.combine(parser.parse("/hotels"), parser.parse("/{hotel}")));
+		assertEquals(1, combiner.getHitCount());
+		assertEquals(1, combiner.getMissCount());
+
+		combiner.combine(hotels, parser.parse("/a"));
+		combiner.combine(hotels, parser.parse("/b"));
+		assertEquals(2, combiner.size());
+		assertEquals(1, combiner.getEvictionCount());
+		assertNotSame(p, combiner.combine(hotels, parser.parse("/{hotel}")));
+
+		combiner.clear();
+		assertEquals(0, combiner.size());
+		assertEquals(Collections.emptyMap(), combiner.combine(hotels, parser.parse("/a")).matchAndExtract("/hotels/a"));
+	}
+
+	@Test
+	public void elementsAreCopiedNotReparsed() {
+		PathPattern pattern2 = parser.parse("/rooms/{room:[0-9]+|any}");
+		PathPattern p = parser.parse("/hotels").combine(pattern2);
+		CaptureVariablePathElement room = (CaptureVariablePathElement) p.getHeadSection().next.next.next.next.next;
+		assertEquals(14, room.pos);
+		assertSame(((CaptureVariablePathElement) pattern2.getHeadSection().next.next.next).getConstraint(),
+				room.getConstraint());
+		assertEquals("12", p.matchAndExtract("/hotels/rooms/12").get("room"));
+	}
+
+	@Test
+	public void combinationsOfDifferentlyParsedPatternsAreRememberedSeparately() {
+		PatternCombiner combiner = new PatternCombiner(10);
+		PathPatternParser compiling = new PathPatternParser();
+		compiling.setCompileMatchers(true);
+		PathPatternParser deferring = new PathPatternParser();
+		deferring.setDeferConstraintChecks(true);
+		PathPattern bookings = parser.parse("/bookings/{id:\\d+}");
+		assertFalse(combiner.combine(parser.parse("/hotels"), bookings).isCompiled());
+		assertTrue(combiner.combine(compiling.parse("/hotels"), bookings).isCompiled());
+		combiner.combine(parser.parse("/hotels"), deferring.parse("/bookings/{id:\\d+}"));
+		assertEquals(0, combiner.getHitCount());
+		assertEquals(3, combiner.size());
+		assertFalse(combiner.combine(parser.parse("/hotels"), parser.parse("/bookings/{id:\\d+}")).isCompiled());
+		assertEquals(1, combiner.getHitCount());
+	}
+
+	private void checkCombine(String pattern1, String pattern2) {
+		PathPattern combined = parser.parse(pattern1).combine(parser.parse(pattern2));
+		PathPattern expected = parser.parse(parser.parse(pattern1).combine(pattern2));
+		assertEquals(expected.getPatternString(), combined.getPatternString());
+		assertEquals(expected.toChainString(), combined.toChainString());
+		assertEquals(0, expected.compareTo(combined));
+		assertEquals(expected.getCapturedVariableCount(), combined.getCapturedVariableCount());
+	}
+
+}